@@ -0,0 +1,79 @@
+package uk.gemwire.camelot.pings;
+
+import com.google.re2j.Pattern;
+import uk.gemwire.camelot.db.schemas.Ping;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministically generates realistic pings and messages for the benchmarks.
+ * <p>The pings are shaped like the ones users actually create: plain words and names, case-insensitive words,
+ * word-bounded alternations, and a few looser patterns without any long literal.</p>
+ */
+final class PingFixtures {
+    private static final String[] WORDS = {
+            "mixin", "forge", "fabric", "gradle", "mapping", "registry", "capability", "renderer", "shader", "packet",
+            "crash", "datagen", "recipe", "tooltip", "entity", "biome", "worldgen", "config", "event", "network",
+            "kotlin", "access", "transformer", "coremod", "jarjar", "toolchain", "loader", "modlauncher", "parchment", "blockstate"
+    };
+
+    private static final String[] MESSAGES = {
+            "hey, does anyone know why my game crashes on startup?",
+            "I updated gradle and now the build fails with some weird toolchain error",
+            "how do I register a custom recipe type? the docs only show serializers",
+            "```java\n@Mod(\"examplemod\")\npublic class ExampleMod {\n    public ExampleMod() {\n        MinecraftForge.EVENT_BUS.register(this);\n    }\n}\n```",
+            "lol",
+            "thanks!",
+            "Can someone look at this crash log? https://gist.github.com/someone/0123456789abcdef",
+            "My entity renderer is invisible, but the hitbox is there. Any ideas what I'm missing?",
+            "is there a way to send a packet from the server to all players tracking an entity",
+            "the mixin doesn't apply, I think the refmap is wrong or the access transformer isn't loaded",
+            "good morning everyone",
+            "you need to run the datagen task before building, otherwise the blockstate files won't exist",
+            "Worldgen is so confusing since 1.19, biome modifiers everywhere",
+            "ok",
+            "Has anyone tried the new mappings? Parchment seems to cover most of the parameters now",
+    };
+
+    private PingFixtures() {
+    }
+
+    /**
+     * Generates {@code amount} pings, owned by {@code amount / 4} users.
+     */
+    static List<Ping> pings(int amount) {
+        final Random random = new Random(42);
+        final List<Ping> pings = new ArrayList<>(amount);
+        for (int i = 0; i < amount; i++) {
+            pings.add(new Ping(i, random.nextInt(Math.max(1, amount / 4)), Pattern.compile(regex(random, i)), "Ping " + i));
+        }
+        return pings;
+    }
+
+    private static String regex(Random random, int index) {
+        final String word = word(random);
+        // Make the words unique so that larger guilds don't only have duplicated pings
+        final String name = "user" + index;
+        return switch (random.nextInt(10)) {
+            case 0, 1, 2 -> "(?i)" + word;
+            case 3, 4 -> "(?i)\\b" + name + "\\b";
+            case 5, 6 -> "(?i)\\b(" + word + "|" + word(random) + ")s?\\b";
+            case 7 -> word + "\\s+" + word(random);
+            case 8 -> "(?i)@?" + name + "(#\\d{4})?";
+            default -> "(?i)\\b\\w{2}" + (char) ('a' + random.nextInt(26)) + "\\d+\\b";
+        };
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    /**
+     * {@return the corpus of real-shaped messages}
+     */
+    static String[] messages() {
+        return MESSAGES.clone();
+    }
+}
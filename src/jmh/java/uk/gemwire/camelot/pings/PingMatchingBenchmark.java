@@ -0,0 +1,74 @@
+package uk.gemwire.camelot.pings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.gemwire.camelot.configuration.Config;
+import uk.gemwire.camelot.db.schemas.Ping;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks matching the messages of a guild against its custom pings, which is done for every message the bot receives.
+ * <p>Each operation matches one message of the {@link PingFixtures#messages() corpus}, cycling through it.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PingMatchingBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int pings;
+
+    @Param({"true", "false"})
+    public boolean combined;
+
+    private PingMatcher matcher;
+    private String[] messages;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Config.COMBINED_PINGS_MATCHING = combined;
+        // Quarantining pings would make the benchmark measure less and less pings
+        Config.PINGS_MATCH_BUDGET = 0;
+
+        final List<Ping> pingList = PingFixtures.pings(pings);
+        matcher = PingMatcher.create(pingList, new PingCosts(meter -> {}));
+        messages = PingFixtures.messages();
+    }
+
+    @Benchmark
+    public void match(Blackhole blackhole) {
+        blackhole.consume(matcher.match(nextMessage()));
+    }
+
+    @Benchmark
+    public void matchByUser(Blackhole blackhole) {
+        blackhole.consume(matcher.matchByUser(nextMessage()));
+    }
+
+    @Benchmark
+    public void build(Blackhole blackhole) {
+        blackhole.consume(PingMatcher.create(matcher.pings(), new PingCosts(meter -> {})));
+    }
+
+    private String nextMessage() {
+        final String message = messages[next];
+        next = (next + 1) % messages.length;
+        return message;
+    }
+}
@@ -0,0 +1,95 @@
+package uk.gemwire.camelot.pings;
+
+import org.jdbi.v3.core.Jdbi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.gemwire.camelot.Database;
+import uk.gemwire.camelot.configuration.Config;
+import uk.gemwire.camelot.db.schemas.Ping;
+import uk.gemwire.camelot.db.transactionals.PingsDAO;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reloading the custom pings from a database populated with pings spread over a few guilds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PingReloadBenchmark {
+    private static final int GUILDS = 5;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int pings;
+
+    private Path directory;
+    private Jdbi jdbi;
+    private PingCache cache;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Config.PINGS_MATCH_BUDGET = 0;
+
+        directory = Files.createTempDirectory("camelot-jmh");
+        jdbi = Database.createDatabaseConnection(directory.resolve("pings.db"), "pings");
+        jdbi.useExtension(PingsDAO.class, db -> db.useTransaction(transaction -> {
+            for (final Ping ping : PingFixtures.pings(pings)) {
+                transaction.insert(ping.id() % GUILDS, ping.user(), ping.regex().pattern(), ping.message());
+            }
+        }));
+
+        Database.pings = jdbi;
+        cache = new PingCache(new PingCosts(meter -> {}));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(directory.resolve("pings.db"));
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * Only load the pings from the database.
+     */
+    @Benchmark
+    public void getAllPings(Blackhole blackhole) {
+        blackhole.consume(jdbi.withExtension(PingsDAO.class, PingsDAO::getAllPings));
+    }
+
+    /**
+     * Load the pings, without compiling them.
+     */
+    @Benchmark
+    public void refresh() {
+        cache.refresh();
+    }
+
+    /**
+     * Load the pings and build the matchers of every guild, like the first message in each guild would.
+     */
+    @Benchmark
+    public void refreshAndCompile(Blackhole blackhole) {
+        cache.refresh();
+        for (int guild = 0; guild < GUILDS; guild++) {
+            blackhole.consume(cache.get(guild));
+        }
+    }
+}
@@ -22,8 +22,11 @@ import uk.gemwire.camelot.configuration.Config;
 import uk.gemwire.camelot.db.transactionals.PendingUnbansDAO;
 import uk.gemwire.camelot.listener.CountersListener;
 import uk.gemwire.camelot.listener.CustomPingListener;
+import uk.gemwire.camelot.listener.PingDigestListener;
 import uk.gemwire.camelot.listener.TrickListener;
 import uk.gemwire.camelot.log.ModerationActionRecorder;
+import uk.gemwire.camelot.script.ScriptContext;
+import uk.gemwire.camelot.script.TrickWarmup;
 import uk.gemwire.camelot.util.jda.ButtonManager;
 
 import java.io.IOException;
@@ -110,7 +113,7 @@ public class BotMain {
                 .disableCache(CacheFlag.VOICE_STATE, CacheFlag.ACTIVITY, CacheFlag.CLIENT_STATUS, CacheFlag.ONLINE_STATUS)
                 .setActivity(Activity.playing("the fiddle"))
                 .setMemberCachePolicy(MemberCachePolicy.ALL)
-                .addEventListeners(BUTTON_MANAGER, new ModerationActionRecorder(), InfoChannelCommand.EVENT_LISTENER, new CustomPingListener(), new CountersListener())
+                .addEventListeners(BUTTON_MANAGER, new ModerationActionRecorder(), InfoChannelCommand.EVENT_LISTENER, CustomPingListener.VISIBILITY, new CountersListener(), ScriptContext.GUILDS)
 
                 .addEventListeners((EventListener) ManageTrickCommand.Update::onEvent, (EventListener) ManageTrickCommand.Add::onEvent, (EventListener) EvalCommand::onEvent)
 
@@ -122,9 +125,14 @@ public class BotMain {
         } catch (IOException exception) {
             throw new RuntimeException("Encountered exception setting up database connections:", exception);
         }
+        // The ping listener evicts the pings of departed members from the database, so it may only listen once the database is set up
+        instance.addEventListener(new CustomPingListener(), new PingDigestListener());
 
         Commands.init();
         instance.addEventListener(new TrickListener(Commands.get().getPrefix()));
+        if (Config.SCRIPT_WARMUP) {
+            TrickWarmup.start();
+        }
 
         EXECUTOR.scheduleAtFixedRate(() -> {
             final PendingUnbansDAO db = Database.main().onDemand(PendingUnbansDAO.class);
@@ -143,5 +151,8 @@ public class BotMain {
 
         // Update info channels every couple of minutes
         EXECUTOR.scheduleAtFixedRate(InfoChannelCommand::run, 1, 2, TimeUnit.MINUTES);
+
+        // Send the custom ping digests that are due
+        EXECUTOR.scheduleAtFixedRate(() -> CustomPingListener.flushDigests(instance), 1, 1, TimeUnit.MINUTES);
     }
 }
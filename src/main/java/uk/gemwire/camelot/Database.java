@@ -8,6 +8,7 @@ import org.slf4j.LoggerFactory;
 import org.sqlite.SQLiteDataSource;
 import uk.gemwire.camelot.configuration.Common;
 import uk.gemwire.camelot.listener.CustomPingListener;
+import uk.gemwire.camelot.listener.TrickListener;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -63,6 +64,9 @@ public class Database {
         main = createDatabaseConnection(mainDb, "main");
         pings = createDatabaseConnection(dir.resolve("pings.db"), "pings");
         CustomPingListener.requestRefresh();
+        CustomPingListener.THREADS.load();
+        CustomPingListener.DIGESTS.load();
+        TrickListener.TRICKS.load();
     }
 
     /**
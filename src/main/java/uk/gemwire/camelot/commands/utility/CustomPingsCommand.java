@@ -4,6 +4,7 @@ import com.google.re2j.Pattern;
 import com.jagrosh.jdautilities.command.SlashCommand;
 import com.jagrosh.jdautilities.command.SlashCommandEvent;
 import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.interactions.Interaction;
 import net.dv8tion.jda.api.interactions.commands.OptionMapping;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
@@ -13,10 +14,15 @@ import net.dv8tion.jda.api.utils.messages.MessageEditData;
 import uk.gemwire.camelot.BotMain;
 import uk.gemwire.camelot.Database;
 import uk.gemwire.camelot.commands.PaginatableCommand;
+import uk.gemwire.camelot.configuration.Config;
 import uk.gemwire.camelot.db.schemas.Ping;
 import uk.gemwire.camelot.db.transactionals.PingsDAO;
 import uk.gemwire.camelot.listener.CustomPingListener;
+import uk.gemwire.camelot.pings.PingComplexity;
+import uk.gemwire.camelot.pings.PingCosts;
+import uk.gemwire.camelot.util.Utils;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
@@ -31,7 +37,9 @@ public class CustomPingsCommand extends SlashCommand {
         this.children = new SlashCommand[] {
                 new Add(),
                 new ListCmd(),
-                new Delete()
+                new Delete(),
+                new Digest(),
+                new Expensive()
         };
     }
 
@@ -56,19 +64,36 @@ public class CustomPingsCommand extends SlashCommand {
         @Override
         protected void execute(SlashCommandEvent event) {
             final String regex = event.getOption("regex", "", OptionMapping::getAsString);
+            final Pattern pattern;
             try {
-                Pattern.compile(regex);
+                pattern = Pattern.compile(regex);
             } catch (Exception ex) {
                 event.reply("Regex is invalid!").setEphemeral(true).queue();
+                return;
             }
 
-            Database.pings().useExtension(PingsDAO.class, db -> db.insert(
-                    event.getGuild().getIdLong(), event.getUser().getIdLong(),
-                    regex, event.getOption("message", "", OptionMapping::getAsString)
-            ));
-            event.reply("Added ping!").setEphemeral(true).queue();
+            // Keep the cost of matching bounded, no matter what users submit
+            final PingComplexity complexity = PingComplexity.of(pattern);
+            if (complexity.isTooComplex()) {
+                event.reply("This regex is too complex (cost %s, the maximum is %s): %s.\nTry making it simpler, or splitting it into multiple pings."
+                        .formatted(complexity.cost(), Config.PINGS_MAX_COMPLEXITY, complexity.explain())).setEphemeral(true).queue();
+                return;
+            }
+            if (Config.PINGS_USER_BUDGET > 0) {
+                final int used = PingComplexity.totalCost(CustomPingListener.CACHE.get(event.getGuild().getIdLong()).pings().stream()
+                        .filter(ping -> ping.user() == event.getUser().getIdLong())
+                        .map(Ping::regex)
+                        .toList());
+                if ((long) used + complexity.cost() > Config.PINGS_USER_BUDGET) {
+                    event.reply("This regex costs %s (%s), but you have already used %s of your budget of %s in this guild.\nDelete or simplify some of your pings first."
+                            .formatted(complexity.cost(), complexity.explain(), used, Config.PINGS_USER_BUDGET)).setEphemeral(true).queue();
+                    return;
+                }
+            }
 
-            CustomPingListener.requestRefresh();
+            final String message = event.getOption("message", "", OptionMapping::getAsString);
+            CustomPingListener.CACHE.create(event.getGuild().getIdLong(), event.getUser().getIdLong(), pattern, message);
+            event.reply("Added ping!").setEphemeral(true).queue();
         }
     }
 
@@ -96,10 +121,78 @@ public class CustomPingsCommand extends SlashCommand {
                 return;
             }
 
-            Database.pings().useExtension(PingsDAO.class, db -> db.deletePing(ping.id()));
+            CustomPingListener.CACHE.delete(ping.id());
             event.reply("Ping deleted!").setEphemeral(true).queue();
+        }
+    }
 
-            CustomPingListener.requestRefresh();
+    /**
+     * Command used to toggle receiving your custom pings as {@link uk.gemwire.camelot.pings.PingDigests digests}.
+     */
+    public static final class Digest extends SlashCommand {
+        public Digest() {
+            this.name = "digest";
+            this.help = "Toggle receiving your pings periodically in a single message, instead of one message per ping";
+            this.options = List.of(
+                    new OptionData(OptionType.BOOLEAN, "enabled", "Whether to receive your pings as digests", true)
+            );
+        }
+
+        @Override
+        protected void execute(SlashCommandEvent event) {
+            final boolean enabled = event.getOption("enabled", false, OptionMapping::getAsBoolean);
+            CustomPingListener.DIGESTS.setEnabled(event.getUser().getIdLong(), enabled);
+            if (enabled) {
+                event.reply("Your pings will now be sent as a digest every %s minutes, or once %s of them are triggered."
+                        .formatted(Config.PINGS_DIGEST_INTERVAL, Config.PINGS_DIGEST_SIZE)).setEphemeral(true).queue();
+            } else {
+                event.reply("Your pings will now be sent as they are triggered.").setEphemeral(true).queue();
+                // Don't leave the pings that were already buffered hanging
+                CustomPingListener.flushDigest(event.getJDA(), event.getUser().getIdLong());
+            }
+        }
+    }
+
+    /**
+     * Command used by moderators to list the custom pings in the guild that take the most time to match.
+     */
+    public static final class Expensive extends SlashCommand {
+        public static final int AMOUNT = 15;
+
+        public Expensive() {
+            this.name = "expensive";
+            this.help = "List the pings in this guild that take the most time to check";
+            this.userPermissions = new Permission[] {
+                    Permission.MODERATE_MEMBERS
+            };
+        }
+
+        @Override
+        protected void execute(SlashCommandEvent event) {
+            final List<PingCosts.Meter> meters = CustomPingListener.CACHE.get(event.getGuild().getIdLong()).pings()
+                    .stream()
+                    .map(ping -> CustomPingListener.COSTS.getMeter(ping.id()))
+                    .filter(meter -> meter != null && meter.invocations() > 0)
+                    .sorted(Comparator.comparingLong(PingCosts.Meter::totalNanos).reversed())
+                    .limit(AMOUNT)
+                    .toList();
+            if (meters.isEmpty()) {
+                event.reply("No pings were checked yet!").setEphemeral(true).queue();
+                return;
+            }
+
+            event.replyEmbeds(new EmbedBuilder()
+                            .setTitle("Most expensive custom pings")
+                            .setDescription(meters.stream()
+                                    .map(meter -> "%s. `%s` by <@%s> | total: %sms, runs: %s, avg: %sµs, p99: %sµs".formatted(
+                                            meter.ping().id(), Utils.truncate(meter.ping().regex().pattern(), 50), meter.ping().user(),
+                                            meter.totalNanos() / 1_000_000, meter.invocations(),
+                                            meter.totalNanos() / meter.invocations() / 1000, meter.p99Nanos() / 1000
+                                    ))
+                                    .collect(Collectors.joining("\n")))
+                            .setFooter("Budget: " + Config.PINGS_MATCH_BUDGET + "µs")
+                            .build())
+                    .setEphemeral(true).queue();
         }
     }
 
@@ -129,7 +222,7 @@ public class CustomPingsCommand extends SlashCommand {
                             .setTitle("Custom pings")
                             .setFooter("Page " + (page + 1) + " of " + pageAmount(data.itemAmount()))
                             .setDescription(data.pings.stream()
-                                    .map(ping -> ping.id() + ". `" + ping.regex().toString() + "` | " + ping.message())
+                                    .map(ping -> ping.id() + ". `" + ping.regex().toString() + "` | " + ping.message() + " (cost: " + PingComplexity.of(ping.regex()).cost() + ")")
                                     .collect(Collectors.joining("\n")))
                             .build())
                     .build());
@@ -15,6 +15,7 @@ import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
 import net.dv8tion.jda.api.utils.messages.MessageEditData;
 import uk.gemwire.camelot.BotMain;
 import uk.gemwire.camelot.commands.Commands;
+import uk.gemwire.camelot.script.BufferedReply;
 import uk.gemwire.camelot.script.ScriptContext;
 import uk.gemwire.camelot.script.ScriptUtils;
 
@@ -68,7 +69,7 @@ public class EvalCommand extends Command {
                     .queue(script -> {
                         event.deferReply().queue();
                         final ScriptContext context = new ScriptContext(event.getJDA(), event.getGuild(), event.getMember(),
-                                event.getChannel(), createData -> event.getHook().editOriginal(MessageEditData.fromCreateData(createData)).complete());
+                                event.getChannel(), new BufferedReply(createData -> event.getHook().editOriginal(MessageEditData.fromCreateData(createData))));
 
                         ScriptUtils.submitExecution(context, script, Optional.ofNullable(event.getValue("args")).map(ModalMapping::getAsString).orElse(""));
                     });
@@ -26,10 +26,16 @@ import uk.gemwire.camelot.commands.PaginatableCommand;
 import uk.gemwire.camelot.configuration.Config;
 import uk.gemwire.camelot.db.schemas.Trick;
 import uk.gemwire.camelot.db.transactionals.TricksDAO;
+import uk.gemwire.camelot.listener.TrickListener;
+import uk.gemwire.camelot.script.ScriptMetrics;
+import uk.gemwire.camelot.script.ScriptUtils;
 import uk.gemwire.camelot.util.jda.ButtonManager;
 
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 /**
  * The slash command used to manage tricks.
@@ -46,6 +52,8 @@ public class ManageTrickCommand extends SlashCommand {
                 new Delete(),
                 new Update(),
                 new Info(),
+                new Limit(),
+                new Stats(),
                 new ListCmd(BotMain.BUTTON_MANAGER),
 
                 new AliasAdd(),
@@ -106,6 +114,17 @@ public class ManageTrickCommand extends SlashCommand {
                 return;
             }
 
+            final String error = ScriptUtils.validate(script);
+            if (error != null) {
+                event.reply("The script is not valid: " + error)
+                        .addEmbeds(new EmbedBuilder()
+                                .setTitle("Script")
+                                .setDescription("```js\n" + script + "\n```")
+                                .build())
+                        .setEphemeral(true).queue();
+                return;
+            }
+
             for (final String name : names) {
                 if (!isNameValid(name)) {
                     event.reply("`%s` is not a valid trick name!".formatted(name))
@@ -120,6 +139,7 @@ public class ManageTrickCommand extends SlashCommand {
 
             final int id = Database.main().withExtension(TricksDAO.class, db -> db.insertTrick(script, event.getUser().getIdLong()));
             Database.main().useExtension(TricksDAO.class, db -> names.forEach(name -> db.addAlias(id, name)));
+            TrickListener.TRICKS.add(new Trick(id, script, event.getUser().getIdLong(), 0), names);
             event.reply("Trick added!").queue();
         }
     }
@@ -150,6 +170,10 @@ public class ManageTrickCommand extends SlashCommand {
             }
 
             Database.main().useExtension(TricksDAO.class, db -> db.delete(trick.id()));
+            TrickListener.TRICKS.delete(trick.id());
+            ScriptUtils.METRICS.remove(trick.id());
+            ScriptUtils.SOURCES.invalidate(trick.id());
+            ScriptUtils.SCHEMAS.invalidate(trick.id());
             event.reply("Trick deleted!").queue();
         }
 
@@ -209,7 +233,21 @@ public class ManageTrickCommand extends SlashCommand {
             final String script = event.getValue("script").getAsString();
             final int id = Integer.parseInt(event.getModalId().substring(MODAL_ID.length()));
 
+            final String error = ScriptUtils.validate(script);
+            if (error != null) {
+                event.reply("The script is not valid: " + error)
+                        .addEmbeds(new EmbedBuilder()
+                                .setTitle("Script")
+                                .setDescription("```js\n" + script + "\n```")
+                                .build())
+                        .setEphemeral(true).queue();
+                return;
+            }
+
             Database.main().useExtension(TricksDAO.class, db -> db.updateScript(id, script));
+            TrickListener.TRICKS.updateScript(id, script);
+            ScriptUtils.SOURCES.invalidate(id);
+            ScriptUtils.SCHEMAS.invalidate(id);
             event.reply("Trick updated!").queue();
         }
 
@@ -244,6 +282,7 @@ public class ManageTrickCommand extends SlashCommand {
                             .appendDescription("Script:\n```js\n" + trick.script() + "\n```")
                             .addField("Names", names.isBlank() ? "*This trick has no names*" : names, false)
                             .addField("Owner", "<@" + trick.owner() + "> (" + trick.owner() + ")", false)
+                            .addField("Statement limit", trick.statementLimit() > 0 ? String.valueOf(trick.statementLimit()) : "*Default*", false)
                             .build())
                     .queue();
         }
@@ -254,6 +293,110 @@ public class ManageTrickCommand extends SlashCommand {
         }
     }
 
+    /**
+     * The command used to set the maximum amount of statements an execution of a trick may run.
+     * <p>As the limit protects the bot from expensive tricks, only moderators and trick masters may change it.</p>
+     */
+    public static final class Limit extends SlashCommand {
+        public Limit() {
+            this.name = "limit";
+            this.help = "Set the maximum amount of statements an execution of a trick may run";
+            this.options = List.of(
+                    new OptionData(OptionType.STRING, "trick", "The trick to set the limit of", true).setAutoComplete(true),
+                    new OptionData(OptionType.INTEGER, "statements", "The maximum amount of statements. 0 to use the default limit", true).setMinValue(0)
+            );
+        }
+
+        @Override
+        protected void execute(SlashCommandEvent event) {
+            final Trick trick = event.getOption("trick", ManageTrickCommand::getTrick);
+            if (trick == null) {
+                event.reply("Unknown trick!").setEphemeral(true).queue();
+                return;
+            }
+
+            if (!checkCanManage(event.getMember())) {
+                event.reply("You cannot change the limit of that trick!").setEphemeral(true).queue();
+                return;
+            }
+
+            final long limit = event.getOption("statements", 0L, OptionMapping::getAsLong);
+            Database.main().useExtension(TricksDAO.class, db -> db.updateStatementLimit(trick.id(), limit));
+            TrickListener.TRICKS.updateStatementLimit(trick.id(), limit);
+            event.reply(limit > 0 ? "Trick limited to " + limit + " statements!" : "Trick reset to the default limit!").queue();
+        }
+
+        @Override
+        public void onAutoComplete(CommandAutoCompleteInteractionEvent event) {
+            suggestTrickAutocomplete(event, "trick");
+        }
+    }
+
+    /**
+     * The command used to show the {@link ScriptUtils#METRICS execution metrics} of the tricks.
+     * <p>This command shows the most run and the slowest tricks, as well as the state of the script executor.</p>
+     */
+    public static final class Stats extends SlashCommand {
+        public static final int AMOUNT = 10;
+
+        public Stats() {
+            this.name = "stats";
+            this.help = "Show the execution statistics of the tricks";
+        }
+
+        @Override
+        protected void execute(SlashCommandEvent event) {
+            final Map<Integer, ScriptMetrics.TrickMetrics> metrics = ScriptUtils.METRICS.all();
+            if (metrics.isEmpty()) {
+                event.reply("No trick has been executed yet!").setEphemeral(true).queue();
+                return;
+            }
+
+            final String mostRun = metrics.entrySet().stream()
+                    .sorted(Comparator.comparingLong((Map.Entry<Integer, ScriptMetrics.TrickMetrics> entry) -> entry.getValue().executions()).reversed())
+                    .limit(AMOUNT)
+                    .map(entry -> "%s: %s runs, %s timeouts, %s errors".formatted(
+                            describe(entry.getKey()), entry.getValue().executions(),
+                            entry.getValue().outcomes(ScriptMetrics.Outcome.TIMEOUT), entry.getValue().outcomes(ScriptMetrics.Outcome.EXCEPTION)))
+                    .collect(Collectors.joining("\n"));
+            final String slowest = metrics.entrySet().stream()
+                    .sorted(Comparator.comparingLong((Map.Entry<Integer, ScriptMetrics.TrickMetrics> entry) -> entry.getValue().total().percentile(0.95)).reversed())
+                    .limit(AMOUNT)
+                    .map(entry -> {
+                        final ScriptMetrics.TrickMetrics trick = entry.getValue();
+                        return "%s: p95 %s, max %s (setup %s, parse %s, run %s, reply %s on average)".formatted(
+                                describe(entry.getKey()), millis(trick.total().percentile(0.95)), millis(trick.total().max()),
+                                millis(trick.phase(ScriptMetrics.Phase.SETUP).mean()), millis(trick.phase(ScriptMetrics.Phase.PARSE).mean()),
+                                millis(trick.phase(ScriptMetrics.Phase.RUN).mean()), millis(trick.phase(ScriptMetrics.Phase.REPLY).mean()));
+                    })
+                    .collect(Collectors.joining("\n"));
+
+            event.replyEmbeds(new EmbedBuilder()
+                            .setTitle("Trick statistics")
+                            // The lists may not fit in fields, so they go in the description
+                            .appendDescription("**Most run**\n" + mostRun + "\n\n**Slowest**\n" + slowest)
+                            .addField("Executor", """
+                                    Sources: %s hits, %s misses, %s cached
+                                    Option schemas: %s hits, %s misses, %s cached
+                                    Queued executions: %s""".formatted(
+                                    ScriptUtils.SOURCES.hits(), ScriptUtils.SOURCES.misses(), ScriptUtils.SOURCES.size(),
+                                    ScriptUtils.SCHEMAS.hits(), ScriptUtils.SCHEMAS.misses(), ScriptUtils.SCHEMAS.size(),
+                                    ScriptUtils.SCHEDULER.queued()), false)
+                            .build())
+                    .queue();
+        }
+
+        private static String describe(int trick) {
+            if (trick == ScriptMetrics.NO_TRICK) return "*Evaluated scripts*";
+            final List<String> aliases = TrickListener.TRICKS.getAliases(trick);
+            return aliases.isEmpty() ? "Trick nr. " + trick : "`" + aliases.get(0) + "` (" + trick + ")";
+        }
+
+        private static String millis(long micros) {
+            return "%.1fms".formatted(micros / 1000d);
+        }
+    }
+
     /**
      * The command used to add a new alias to a trick.
      */
@@ -292,6 +435,7 @@ public class ManageTrickCommand extends SlashCommand {
                 return;
             }
             Database.main().useExtension(TricksDAO.class, db -> db.addAlias(trick.id(), alias));
+            TrickListener.TRICKS.addAlias(trick.id(), alias);
 
             event.reply("Alias added!").queue();
         }
@@ -318,11 +462,7 @@ public class ManageTrickCommand extends SlashCommand {
         @Override
         protected void execute(SlashCommandEvent event) {
             final String alias = event.getOption("alias", "", OptionMapping::getAsString);
-            final Trick trick = Database.main().withExtension(TricksDAO.class, db -> {
-                final Integer id = db.getTrickByName(alias);
-                if (id == null) return null;
-                return db.getTrick(id);
-            });
+            final Trick trick = TrickListener.TRICKS.getByAlias(alias);
             if (trick == null) {
                 event.reply("Unknown trick alias!").setEphemeral(true).queue();
                 return;
@@ -334,6 +474,7 @@ public class ManageTrickCommand extends SlashCommand {
             }
 
             Database.main().useExtension(TricksDAO.class, db -> db.deleteAlias(alias));
+            TrickListener.TRICKS.removeAlias(alias);
 
             event.reply("Alias removed!").queue();
         }
@@ -384,16 +525,23 @@ public class ManageTrickCommand extends SlashCommand {
      * {@return if the given {@code member} can edit the {@code trick}}
      */
     private static boolean checkCanEdit(Trick trick, Member member) {
-        return member.getIdLong() == trick.owner() || member.hasPermission(Permission.MODERATE_MEMBERS) ||
+        return member.getIdLong() == trick.owner() || checkCanManage(member);
+    }
+
+    /**
+     * {@return if the given {@code member} can edit any trick}
+     */
+    private static boolean checkCanManage(Member member) {
+        return member.hasPermission(Permission.MODERATE_MEMBERS) ||
                 member.getRoles().stream().anyMatch(role -> role.getIdLong() == Config.TRICK_MASTER_ROLE);
     }
 
     /**
      * Gets a trick from a {@code optionMapping}.
-     * <p>This method first tries to query by ID, and then by name, getting the option {@linkplain OptionMapping#getAsString() as a string}.</p>
+     * <p>This method first tries to look up by ID, and then by name, getting the option {@linkplain OptionMapping#getAsString() as a string}.</p>
      */
     static Trick getTrick(OptionMapping optionMapping) {
-        return Database.main().withExtension(TricksDAO.class, db -> db.getTrick(optionMapping.getAsString()));
+        return TrickListener.TRICKS.get(optionMapping.getAsString());
     }
 
     /**
@@ -403,7 +551,7 @@ public class ManageTrickCommand extends SlashCommand {
      */
     static void suggestTrickAutocomplete(CommandAutoCompleteInteractionEvent event, String trickOpt) {
         if (!event.getFocusedOption().getName().equals(trickOpt)) return;
-        final List<String> tricks = Database.main().withExtension(TricksDAO.class, db -> db.findTricksMatching("%" + event.getFocusedOption().getValue() + "%"));
+        final List<String> tricks = TrickListener.TRICKS.search(event.getFocusedOption().getValue(), OptionData.MAX_CHOICES);
         event.replyChoices(tricks.stream()
                         .map(tr -> new Command.Choice(tr, tr))
                         .toList())
@@ -8,6 +8,7 @@ import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import net.dv8tion.jda.api.utils.messages.MessageEditData;
 import uk.gemwire.camelot.db.schemas.Trick;
+import uk.gemwire.camelot.script.BufferedReply;
 import uk.gemwire.camelot.script.ScriptContext;
 import uk.gemwire.camelot.script.ScriptUtils;
 
@@ -38,9 +39,9 @@ public class TrickCommand extends SlashCommand {
 
         event.deferReply().queue();
         final ScriptContext context = new ScriptContext(event.getJDA(), event.getGuild(), event.getMember(),
-                event.getChannel(), createData -> event.getHook().editOriginal(MessageEditData.fromCreateData(createData)).complete());
+                event.getChannel(), new BufferedReply(createData -> event.getHook().editOriginal(MessageEditData.fromCreateData(createData))));
 
-        ScriptUtils.submitExecution(context, trick.script(), args);
+        ScriptUtils.submitExecution(context, trick, args);
     }
 
     @Override
@@ -48,6 +48,72 @@ public class Config {
      */
     public static long PINGS_THREADS_CHANNEL = 0L;
 
+    /**
+     * If the pings of a guild should be compiled into a combined matcher, instead of checking each ping one by one.
+     */
+    public static boolean COMBINED_PINGS_MATCHING = true;
+
+    /**
+     * The budget, in microseconds, that matching a single ping may take (at the 99th percentile) before the ping is quarantined.
+     * {@code 0} disables quarantining.
+     */
+    public static long PINGS_MATCH_BUDGET = 500;
+
+    /**
+     * How long, in minutes, messages that triggered the pings of a user with digests enabled are buffered for, before being sent as a digest.
+     */
+    public static int PINGS_DIGEST_INTERVAL = 30;
+
+    /**
+     * The amount of buffered messages after which a digest is sent, regardless of the {@link #PINGS_DIGEST_INTERVAL interval}.
+     */
+    public static int PINGS_DIGEST_SIZE = 25;
+
+    /**
+     * The maximum {@link uk.gemwire.camelot.pings.PingComplexity cost} of a single custom ping. {@code 0} disables the limit.
+     */
+    public static int PINGS_MAX_COMPLEXITY = 250;
+
+    /**
+     * The maximum total {@link uk.gemwire.camelot.pings.PingComplexity cost} of the custom pings of a user in a guild. {@code 0} disables the limit.
+     */
+    public static int PINGS_USER_BUDGET = 1000;
+
+    /**
+     * The maximum amount of custom ping patterns to keep compiled, including the combined patterns of the matchers. The least recently used guilds are evicted when the limit is reached.
+     */
+    public static long PINGS_MAX_COMPILED = 50_000;
+
+    /**
+     * How long, in minutes, the compiled custom ping patterns of a guild without any message are kept for.
+     */
+    public static long PINGS_IDLE_EVICTION = 60;
+
+    /**
+     * The amount of threads executing scripts.
+     */
+    public static int SCRIPT_WORKERS = 4;
+
+    /**
+     * The maximum amount of script executions waiting for a worker. Executions over the limit are rejected.
+     */
+    public static int SCRIPT_QUEUE_SIZE = 100;
+
+    /**
+     * The maximum amount of script executions of a single user waiting for a worker. Executions over the limit are rejected.
+     */
+    public static int SCRIPT_USER_QUEUE_SIZE = 3;
+
+    /**
+     * The default maximum amount of statements a script execution may run. Tricks may override it. {@code 0} disables the limit.
+     */
+    public static long SCRIPT_STATEMENT_LIMIT = 10_000_000;
+
+    /**
+     * If all tricks should be {@link uk.gemwire.camelot.script.TrickWarmup parsed in the background} at startup.
+     */
+    public static boolean SCRIPT_WARMUP = true;
+
     /**
      * Read configs from file.
      * If the file does not exist, or the properties are invalid, the config is reset to defaults.
@@ -63,6 +129,19 @@ public class Config {
             PREFIX = properties.getProperty("prefix");
             TRICK_MASTER_ROLE = Long.parseLong(properties.getProperty("trickMaster", "0"));
             PINGS_THREADS_CHANNEL = Long.parseLong(properties.getProperty("pingsThreadsChannel", "0"));
+            COMBINED_PINGS_MATCHING = Boolean.parseBoolean(properties.getProperty("combinedPingsMatching", "true"));
+            PINGS_MATCH_BUDGET = Long.parseLong(properties.getProperty("pingsMatchBudget", "500"));
+            PINGS_DIGEST_INTERVAL = Integer.parseInt(properties.getProperty("pingsDigestInterval", "30"));
+            PINGS_DIGEST_SIZE = Integer.parseInt(properties.getProperty("pingsDigestSize", "25"));
+            PINGS_MAX_COMPLEXITY = Integer.parseInt(properties.getProperty("pingsMaxComplexity", "250"));
+            PINGS_USER_BUDGET = Integer.parseInt(properties.getProperty("pingsUserBudget", "1000"));
+            PINGS_MAX_COMPILED = Long.parseLong(properties.getProperty("pingsMaxCompiled", "50000"));
+            PINGS_IDLE_EVICTION = Long.parseLong(properties.getProperty("pingsIdleEviction", "60"));
+            SCRIPT_WORKERS = Integer.parseInt(properties.getProperty("scriptWorkers", "4"));
+            SCRIPT_QUEUE_SIZE = Integer.parseInt(properties.getProperty("scriptQueueSize", "100"));
+            SCRIPT_USER_QUEUE_SIZE = Integer.parseInt(properties.getProperty("scriptUserQueueSize", "3"));
+            SCRIPT_STATEMENT_LIMIT = Long.parseLong(properties.getProperty("scriptStatementLimit", "10000000"));
+            SCRIPT_WARMUP = Boolean.parseBoolean(properties.getProperty("scriptWarmup", "true"));
 
         } catch (Exception e) {
             Files.writeString(Path.of("config.properties"),
@@ -77,6 +156,33 @@ public class Config {
                             trickMaster=0
                             # The channel in which to create ping private threads if a member does not have DMs enabled.
                             pingsThreadsChannel=0
+                            # If the pings of a guild should be compiled into a combined matcher. Disable to check each ping one by one.
+                            combinedPingsMatching=true
+                            # The time, in microseconds, that matching a ping may take before the ping is quarantined. 0 to disable quarantining.
+                            pingsMatchBudget=500
+                            # How long, in minutes, to buffer the pings of users with digests enabled before sending them a digest.
+                            pingsDigestInterval=30
+                            # The amount of buffered pings after which a digest is sent, even if the interval has not passed.
+                            pingsDigestSize=25
+                            # The maximum cost of a single custom ping. 0 to disable the limit.
+                            pingsMaxComplexity=250
+                            # The maximum total cost of the custom pings of a user in a guild. 0 to disable the limit.
+                            pingsUserBudget=1000
+                            # The maximum amount of custom ping patterns to keep compiled, including combined patterns, across all guilds.
+                            pingsMaxCompiled=50000
+                            # How long, in minutes, to keep the compiled custom pings of a guild in which no message was sent.
+                            pingsIdleEviction=60
+                            
+                            # The amount of threads executing scripts.
+                            scriptWorkers=4
+                            # The maximum amount of script executions waiting to be executed, after which new executions are rejected.
+                            scriptQueueSize=100
+                            # The maximum amount of script executions of a single user waiting to be executed.
+                            scriptUserQueueSize=3
+                            # The default maximum amount of statements a script execution may run. 0 to disable the limit.
+                            scriptStatementLimit=10000000
+                            # If all tricks should be parsed in the background at startup, so that their first execution is faster.
+                            scriptWarmup=true
                             
                             # The channel in which to send moderation logs.
                             moderationLogs=0
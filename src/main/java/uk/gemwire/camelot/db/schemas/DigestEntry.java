@@ -0,0 +1,33 @@
+package uk.gemwire.camelot.db.schemas;
+
+import org.jdbi.v3.core.mapper.RowMapper;
+import org.jdbi.v3.core.statement.StatementContext;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A message that triggered custom pings of a user, buffered for their next digest.
+ *
+ * @param id        the ID of the entry
+ * @param user      the user the entry is for
+ * @param guild     the guild the message was sent in
+ * @param author    the name of the author of the message
+ * @param url       the jump URL of the message
+ * @param content   the content of the message
+ * @param pings     the messages of the triggered pings
+ * @param timestamp the time, in milliseconds since the epoch, at which the message was sent
+ */
+public record DigestEntry(int id, long user, long guild, String author, String url, String content, String pings, long timestamp) {
+    public static final class Mapper implements RowMapper<DigestEntry> {
+
+        @Override
+        public DigestEntry map(ResultSet rs, StatementContext ctx) throws SQLException {
+            return new DigestEntry(
+                    rs.getInt(1), rs.getLong(2), rs.getLong(3),
+                    rs.getString(4), rs.getString(5), rs.getString(6), rs.getString(7),
+                    rs.getLong(8)
+            );
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package uk.gemwire.camelot.db.schemas;
+
+import com.google.re2j.Pattern;
+
+/**
+ * A custom ping whose pattern is not compiled yet.
+ *
+ * @param id      the ID of the ping
+ * @param user    the user owning the ping
+ * @param regex   the source of the pattern of the ping
+ * @param message the message of the ping
+ */
+public record RawPing(int id, long user, String regex, String message) {
+    /**
+     * {@return this ping, with its pattern compiled}
+     *
+     * @throws com.google.re2j.PatternSyntaxException if the pattern is invalid
+     */
+    public Ping compile() {
+        return new Ping(id, user, Pattern.compile(regex), message);
+    }
+}
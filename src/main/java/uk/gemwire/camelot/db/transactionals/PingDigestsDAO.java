@@ -0,0 +1,90 @@
+package uk.gemwire.camelot.db.transactionals;
+
+import org.jdbi.v3.sqlobject.config.RegisterRowMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.jdbi.v3.sqlobject.transaction.Transactional;
+import uk.gemwire.camelot.db.schemas.DigestEntry;
+
+import java.util.List;
+
+/**
+ * Transactional used to interact with custom ping {@link DigestEntry digests}.
+ */
+@RegisterRowMapper(DigestEntry.Mapper.class)
+public interface PingDigestsDAO extends Transactional<PingDigestsDAO> {
+    /**
+     * {@return the users that receive their pings as digests}
+     */
+    @SqlQuery("select user from ping_digest_users")
+    List<Long> getDigestUsers();
+
+    /**
+     * Enable digests for the {@code user}.
+     */
+    @SqlUpdate("insert or ignore into ping_digest_users(user) values (?)")
+    void enable(long user);
+
+    /**
+     * Disable digests for the {@code user}.
+     */
+    @SqlUpdate("delete from ping_digest_users where user = ?")
+    void disable(long user);
+
+    /**
+     * Buffer a message that triggered pings of a user.
+     *
+     * @param user      the user the entry is for
+     * @param guild     the guild the message was sent in
+     * @param author    the name of the author of the message
+     * @param url       the jump URL of the message
+     * @param content   the content of the message
+     * @param pings     the messages of the triggered pings
+     * @param timestamp the time, in milliseconds since the epoch, at which the message was sent
+     */
+    @SqlUpdate("insert into ping_digest_entries(user, guild, author, url, content, pings, timestamp) values (?, ?, ?, ?, ?, ?, ?)")
+    void insert(long user, long guild, String author, String url, String content, String pings, long timestamp);
+
+    /**
+     * {@return the amount of entries buffered for the {@code user}}
+     */
+    @SqlQuery("select count(*) from ping_digest_entries where user = ? and digest is null")
+    int count(long user);
+
+    /**
+     * {@return the entries buffered for the {@code user}, oldest first}
+     */
+    @SqlQuery("select id, user, guild, author, url, content, pings, timestamp from ping_digest_entries where user = ? and digest is null order by id")
+    List<DigestEntry> getEntries(long user);
+
+    /**
+     * {@return the users with a buffered entry sent before the given {@code timestamp}}
+     */
+    @SqlQuery("select user from ping_digest_entries where digest is null group by user having min(timestamp) <= ?")
+    List<Long> getUsersWithEntriesBefore(long timestamp);
+
+    /**
+     * Mark the buffered entries of the {@code user} up to, and including, the entry with the given {@code id} as sent in the digest with that ID.
+     */
+    @SqlUpdate("update ping_digest_entries set digest = :id where user = :user and id <= :id and digest is null")
+    void markSent(@Bind("user") long user, @Bind("id") int id);
+
+    /**
+     * Mark the entries of the given {@code digest} as buffered again, as the digest could not be sent.
+     */
+    @SqlUpdate("update ping_digest_entries set digest = null where digest = ?")
+    void unmarkSent(int digest);
+
+    /**
+     * {@return the entries sent in the given {@code digest}, oldest first}
+     */
+    @SqlQuery("select id, user, guild, author, url, content, pings, timestamp from ping_digest_entries where digest = ? order by id")
+    List<DigestEntry> getDigest(int digest);
+
+    /**
+     * Delete the sent digests whose newest entry is older than the given {@code timestamp}.
+     */
+    @SqlUpdate("delete from ping_digest_entries where digest in (select digest from ping_digest_entries where digest is not null group by digest having max(timestamp) < ?)")
+    void deleteDigestsBefore(long timestamp);
+}
@@ -1,6 +1,7 @@
 package uk.gemwire.camelot.db.transactionals;
 
-import com.google.re2j.Pattern;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import org.jdbi.v3.sqlobject.config.RegisterRowMapper;
@@ -9,6 +10,7 @@ import org.jdbi.v3.sqlobject.statement.SqlUpdate;
 import org.jdbi.v3.sqlobject.transaction.Transactional;
 import org.jetbrains.annotations.Nullable;
 import uk.gemwire.camelot.db.schemas.Ping;
+import uk.gemwire.camelot.db.schemas.RawPing;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -25,9 +27,16 @@ public interface PingsDAO extends Transactional<PingsDAO> {
      * @param user    the ping owner
      * @param regex   the pattern of the ping
      * @param message the ping message
+     * @return the ID of the newly-created ping
      */
-    @SqlUpdate("insert into pings(guild, user, regex, message) values (?, ?, ?, ?)")
-    void insert(long guild, long user, String regex, String message);
+    default int insert(long guild, long user, String regex, String message) {
+        return getHandle().createUpdate("insert into pings(guild, user, regex, message) values (?, ?, ?, ?) returning id;")
+                .bind(0, guild)
+                .bind(1, user)
+                .bind(2, regex)
+                .bind(3, message)
+                .execute((rs, $) -> rs.get().getResultSet().getInt("id"));
+    }
 
     /**
      * Delete all pings from the {@code user} in the {@code guild}.
@@ -51,6 +60,17 @@ public interface PingsDAO extends Transactional<PingsDAO> {
     @SqlUpdate("insert or replace into ping_threads(user, thread) values (?, ?)")
     void insertThread(long user, long thread);
 
+    /**
+     * {@return a map of user -> custom pings thread of the user}
+     */
+    default Long2LongMap getAllThreads() {
+        return getHandle().createQuery("select user, thread from ping_threads")
+                .reduceResultSet(new Long2LongOpenHashMap(), (previous, rs, ctx) -> {
+                    previous.put(rs.getLong(1), rs.getLong(2));
+                    return previous;
+                });
+    }
+
     /**
      * {@return all pings of the {@code user} in the {@code guild}}
      */
@@ -73,14 +93,23 @@ public interface PingsDAO extends Transactional<PingsDAO> {
     void deletePing(int id);
 
     /**
-     * {@return a map of guild -> pings in the guild}
+     * Quarantine a ping, so that it is not checked anymore.
+     *
+     * @param id the ID of the ping to quarantine
+     */
+    @SqlUpdate("update pings set quarantined = true where id = ?")
+    void quarantine(int id);
+
+    /**
+     * {@return a map of guild -> pings in the guild that aren't quarantined}
+     * <p>The patterns of the pings are not compiled, so that they can be compiled when they are first needed.</p>
      */
-    default Long2ObjectMap<List<Ping>> getAllPings() {
-        return getHandle().createQuery("select guild, id, user, regex, message from pings")
-                .reduceResultSet(new Long2ObjectOpenHashMap<List<Ping>>(), (previous, rs, ctx) -> {
+    default Long2ObjectMap<List<RawPing>> getAllPings() {
+        return getHandle().createQuery("select guild, id, user, regex, message from pings where not quarantined")
+                .reduceResultSet(new Long2ObjectOpenHashMap<List<RawPing>>(), (previous, rs, ctx) -> {
                     final long guild = rs.getLong(1);
-                    previous.computeIfAbsent(guild, k -> new ArrayList<>()).add(new Ping(
-                            rs.getInt(2), rs.getLong(3), Pattern.compile(rs.getString(4)), rs.getString(5)
+                    previous.computeIfAbsent(guild, k -> new ArrayList<>()).add(new RawPing(
+                            rs.getInt(2), rs.getLong(3), rs.getString(4), rs.getString(5)
                     ));
                     return previous;
                 });
@@ -1,5 +1,7 @@
 package uk.gemwire.camelot.db.transactionals;
 
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.jdbi.v3.sqlobject.config.RegisterRowMapper;
 import org.jdbi.v3.sqlobject.customizer.Bind;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
@@ -26,6 +28,23 @@ public interface TricksDAO extends Transactional<TricksDAO> {
     @SqlQuery("select * from tricks limit :limit offset :from")
     List<Trick> getTricks(@Bind("from") int from, @Bind("limit") int limit);
 
+    /**
+     * {@return all known tricks}
+     */
+    @SqlQuery("select * from tricks")
+    List<Trick> getAllTricks();
+
+    /**
+     * {@return a map of trick alias -> ID of the trick}
+     */
+    default Object2IntMap<String> getAllTrickNames() {
+        return getHandle().createQuery("select name, trick from trick_names")
+                .reduceResultSet(new Object2IntOpenHashMap<String>(), (previous, rs, ctx) -> {
+                    previous.put(rs.getString(1), rs.getInt(2));
+                    return previous;
+                });
+    }
+
     /**
      * {@return the ID of the trick with the given {@code name}, or {@code null} if a trick with that alias does not exist}
      */
@@ -68,6 +87,15 @@ public interface TricksDAO extends Transactional<TricksDAO> {
     @SqlUpdate("update tricks set script = :script where id = :id")
     void updateScript(@Bind("id") int trickId, @Bind("script") String script);
 
+    /**
+     * Update the statement limit of a given trick.
+     *
+     * @param trickId the ID of the trick to update
+     * @param limit   the new statement limit of the trick, or {@code 0} to use the default limit
+     */
+    @SqlUpdate("update tricks set statement_limit = :limit where id = :id")
+    void updateStatementLimit(@Bind("id") int trickId, @Bind("limit") long limit);
+
     /**
      * {@return all the aliases of the trick with the given {@code trickId}}
      */
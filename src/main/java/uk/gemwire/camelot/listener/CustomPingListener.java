@@ -1,21 +1,20 @@
 package uk.gemwire.camelot.listener;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.JDA;
-import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.channel.ChannelType;
 import net.dv8tion.jda.api.entities.channel.attribute.IThreadContainer;
 import net.dv8tion.jda.api.entities.channel.concrete.ThreadChannel;
-import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
 import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRemoveEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.exceptions.ErrorHandler;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
 import net.dv8tion.jda.api.exceptions.RateLimitedException;
 import net.dv8tion.jda.api.hooks.EventListener;
 import net.dv8tion.jda.api.requests.ErrorResponse;
@@ -24,76 +23,234 @@ import net.dv8tion.jda.api.requests.restaction.MessageCreateAction;
 import net.dv8tion.jda.api.utils.messages.MessageCreateData;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import uk.gemwire.camelot.Database;
+import uk.gemwire.camelot.BotMain;
 import uk.gemwire.camelot.configuration.Config;
+import uk.gemwire.camelot.db.schemas.DigestEntry;
 import uk.gemwire.camelot.db.schemas.Ping;
-import uk.gemwire.camelot.db.transactionals.PingsDAO;
+import uk.gemwire.camelot.pings.ChannelVisibilityCache;
+import uk.gemwire.camelot.pings.PingCache;
+import uk.gemwire.camelot.pings.PingCosts;
+import uk.gemwire.camelot.pings.PingDigests;
+import uk.gemwire.camelot.pings.PingThreadCache;
 import uk.gemwire.camelot.util.Utils;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * The listener that listens for new messages in guild and checks if they triggered any custom ping.
  * <p>This listener will check all pings in the guild, that aren't of the message author, and the ones that match will notify the owner via DMs or via a private thread (if the owner disabled DMs).</p>
+ * <p>All pings of the same owner triggered by a message are grouped into a single notification, which is sent from the {@link #DISPATCHER dispatcher thread}.</p>
+ * <p>The pings of members that leave the guild are deleted, and dumped in their ping thread.</p>
+ * <p>Owners that opted into {@link #DIGESTS digests} instead get all the messages that triggered their pings in a single message, every once in a while.</p>
  */
 public class CustomPingListener implements EventListener {
+    /**
+     * The tracker of how long matching each ping takes. Pings that go over the {@link Config#PINGS_MATCH_BUDGET budget} are {@link #quarantine(PingCosts.Meter) quarantined}.
+     */
+    public static final PingCosts COSTS = new PingCosts(CustomPingListener::quarantine);
+
     // We cache the pings because pattern compilation can take a while and messages can be sent at rates of over 5/second in the Forge Discord so let's avoid too many db queries and wasting too much power
-    public static final Long2ObjectMap<List<Ping>> CACHE = new Long2ObjectOpenHashMap<>();
+    public static final PingCache CACHE = new PingCache(COSTS);
+
+    /**
+     * The cache of ping threads and users with closed DMs, used to avoid database queries and failed DM attempts when sending notifications.
+     */
+    public static final PingThreadCache THREADS = new PingThreadCache();
+
+    /**
+     * The cache of which members can view which channels, used to drop pings whose owners cannot see the channel they were triggered in.
+     */
+    public static final ChannelVisibilityCache VISIBILITY = new ChannelVisibilityCache();
+
+    /**
+     * The digests of the users that receive their pings periodically instead of one notification per message.
+     */
+    public static final PingDigests DIGESTS = new PingDigests();
+
+    /**
+     * The maximum amount of messages with triggered pings that may wait for their notifications to be dispatched.
+     * <p>If the queue is full, the gateway thread will dispatch the notifications itself, slowing down event processing until the queue drains.</p>
+     */
+    public static final int DISPATCH_QUEUE_SIZE = 500;
+
+    /**
+     * The executor that sends ping notifications, so that building the REST chains does not hold up the gateway thread.
+     */
+    private static final ExecutorService DISPATCHER = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(DISPATCH_QUEUE_SIZE),
+            r -> {
+                final Thread thread = new Thread(r, "Custom ping dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy()
+    );
 
     public static void requestRefresh() {
-        synchronized (CACHE) {
-            final var newValue = Database.pings().withExtension(PingsDAO.class, PingsDAO::getAllPings);
-            CACHE.clear();
-            CACHE.putAll(newValue);
-        }
+        CACHE.refresh();
     }
 
     @Override
     public void onEvent(@NotNull GenericEvent gevent) {
+        if (gevent instanceof GuildMemberRemoveEvent event) {
+            // Get rid of the pings of departed members right away, so that we never try to match or notify them
+            final long user = event.getUser().getIdLong();
+            final long guild = event.getGuild().getIdLong();
+            DISPATCHER.execute(() -> evictPings(event.getJDA(), user, guild));
+            return;
+        }
         if (!(gevent instanceof MessageReceivedEvent event)) return;
         if (!event.isFromGuild() || event.getAuthor().isBot() || event.getAuthor().isSystem()) return;
-        synchronized (CACHE) {
-            CACHE.getOrDefault(event.getGuild().getIdLong(), List.of()).forEach(ping -> {
-                // if (ping.user() == event.getAuthor().getIdLong()) return;
-
-                if (ping.regex().matcher(event.getMessage().getContentRaw()).find()) {
-                    sendPing(event.getMessage(), ping);
-                }
-            });
-        }
+        final Long2ObjectMap<List<Ping>> triggered = CACHE.get(event.getGuild().getIdLong())
+                .matchByUser(event.getMessage().getContentRaw());
+        if (triggered.isEmpty()) return;
+
+        final Message message = event.getMessage();
+        DISPATCHER.execute(() -> {
+            for (final var entry : triggered.long2ObjectEntrySet()) {
+                // if (entry.getLongKey() == message.getAuthor().getIdLong()) continue;
+                sendPing(message, entry.getLongKey(), entry.getValue());
+            }
+        });
     }
 
-    private void sendPing(Message message, Ping ping) {
-        message.getGuild().retrieveMemberById(ping.user())
-                .flatMap(pinged -> canViewChannel(pinged, message.getGuildChannel()), pinged -> pinged.getUser().openPrivateChannel()
-                        .flatMap(channel -> sendPingMessage(ping, message, channel))
-                        .onErrorFlatMap(ex -> getPingThread(message.getJDA(), pinged.getIdLong()).flatMap(channel -> sendPingMessage(ping, message, channel))))
-                .queue(null, new ErrorHandler().handle(ErrorResponse.UNKNOWN_MEMBER, err -> {
-                    // User left the guild, dump their pings in the thread, then delete from database
-                    final List<Ping> pings = Database.pings().withExtension(PingsDAO.class, db -> db.getAllPingsOf(ping.user(), message.getGuild().getIdLong()));
-                    getPingThread(message.getJDA(), ping.user())
-                            .flatMap(thread -> thread.sendMessage(MessageCreateData.fromEmbeds(new EmbedBuilder()
-                                    .setDescription("Custom pings dump")
-                                    .setFooter("User left the guild")
-                                    .setDescription(pings.stream()
-                                            .map(p -> p.id() + ". `" + p.regex().toString() + "` | " + p.message())
-                                            .collect(Collectors.joining("\n")))
-                                    .build())))
-                            .queue($ -> {
-                                Database.pings().useExtension(PingsDAO.class, db -> db.deletePingsOf(ping.user(), message.getGuild().getIdLong()));
-                                requestRefresh();
-                            });
+    /**
+     * Notify the {@code user} that the {@code message} triggered their {@code pings}, in a single message.
+     *
+     * @param message the message that triggered the pings
+     * @param user    the user to notify
+     * @param pings   the pings of the user that were triggered
+     */
+    private void sendPing(Message message, long user, List<Ping> pings) {
+        // Members are cached, so we can drop the pings of members that can't see the channel without any request
+        final Member cached = message.getGuild().getMemberById(user);
+        if (cached != null && !VISIBILITY.canView(cached, message.getGuildChannel())) return;
+
+        message.getGuild().retrieveMemberById(user)
+                .queue(pinged -> {
+                    if (!VISIBILITY.canView(pinged, message.getGuildChannel())) return;
+                    if (DIGESTS.isEnabled(user)) {
+                        if (DIGESTS.add(user, message, pings) >= Config.PINGS_DIGEST_SIZE) {
+                            DISPATCHER.execute(() -> flushDigest(message.getJDA(), user));
+                        }
+                        return;
+                    }
+                    sendToUser(message.getJDA(), user, channel -> sendPingMessage(user, pings, message, channel)).queue();
+                }, new ErrorHandler().handle(ErrorResponse.UNKNOWN_MEMBER, err -> {
+                    // User left the guild while we weren't listening
+                    DISPATCHER.execute(() -> evictPings(message.getJDA(), user, message.getGuild().getIdLong()));
                 }));
     }
 
+    /**
+     * Delete all pings of a {@code user} that left the {@code guild} from the database and the cache,
+     * and dump them in the ping thread of the user so that they can recreate them if they come back.
+     *
+     * @param jda   the JDA instance
+     * @param user  the user that left the guild
+     * @param guild the guild the user left
+     */
+    private static void evictPings(JDA jda, long user, long guild) {
+        final List<Ping> allPings = CACHE.deleteAllOf(user, guild);
+        if (allPings.isEmpty()) return;
+
+        getPingThread(jda, user)
+                .flatMap(thread -> thread.sendMessage(MessageCreateData.fromEmbeds(new EmbedBuilder()
+                        .setTitle("Custom pings dump")
+                        .setFooter("User left the guild")
+                        .setDescription(Utils.truncate(allPings.stream()
+                                .map(p -> p.id() + ". `" + p.regex().toString() + "` | " + p.message())
+                                .collect(Collectors.joining("\n")), MessageEmbed.DESCRIPTION_MAX_LENGTH))
+                        .build())))
+                .queue();
+    }
+
+    /**
+     * Flush the digests of all users whose oldest buffered message is older than the {@link Config#PINGS_DIGEST_INTERVAL digest interval}.
+     */
+    public static void flushDigests(JDA jda) {
+        DIGESTS.pruneSent();
+        for (final long user : DIGESTS.getDue()) {
+            DISPATCHER.execute(() -> flushDigest(jda, user));
+        }
+    }
+
+    /**
+     * Send the {@code user} all the messages buffered for their digest, in a single paginated message.
+     * <p>The buffered messages are buffered again if the digest could not be sent.</p>
+     */
+    public static void flushDigest(JDA jda, long user) {
+        final List<DigestEntry> entries = DIGESTS.startFlush(user);
+        if (entries == null) return;
+
+        final int digest = entries.get(entries.size() - 1).id();
+        final MessageCreateData data = PingDigests.createMessage(digest, entries);
+        sendToUser(jda, user, channel -> channel.sendMessage(data).setContent(channel.getType() == ChannelType.PRIVATE ? null : "<@" + user + ">"))
+                .queue($ -> DIGESTS.finishFlush(user, digest, true), err -> {
+                    BotMain.LOGGER.error("Could not send custom pings digest to user {}: ", user, err);
+                    DIGESTS.finishFlush(user, digest, false);
+                });
+    }
+
+    /**
+     * Send a message to the {@code user} in DMs, or in their ping thread if they do not accept DMs.
+     *
+     * @param jda     the JDA instance to send the message with
+     * @param user    the user to send the message to
+     * @param message a function creating the message to send in the given channel
+     * @return an action sending the message
+     */
+    private static RestAction<Message> sendToUser(JDA jda, long user, Function<MessageChannel, MessageCreateAction> message) {
+        // If we know the user doesn't accept DMs, don't bother trying to DM them
+        if (THREADS.hasClosedDms(user)) {
+            return getPingThread(jda, user).flatMap(message);
+        }
+        return jda.openPrivateChannelById(user)
+                .flatMap(message)
+                .onErrorFlatMap(ex -> {
+                    if (ex instanceof ErrorResponseException err && err.getErrorResponse() == ErrorResponse.CANNOT_SEND_TO_USER) {
+                        THREADS.markClosedDms(user);
+                    }
+                    return getPingThread(jda, user).flatMap(message);
+                });
+    }
+
+    /**
+     * Quarantines a ping that went over the matching budget, removing it from the cache and notifying its owner.
+     */
+    private static void quarantine(PingCosts.Meter meter) {
+        final Ping ping = meter.ping();
+        BotMain.LOGGER.warn("Quarantining custom ping {} of user {} as its p99 match time is {}µs", ping.id(), ping.user(), meter.p99Nanos() / 1000);
+        DISPATCHER.execute(() -> {
+            CACHE.quarantine(ping.id());
+
+            final JDA jda = BotMain.get();
+            final MessageEmbed embed = new EmbedBuilder()
+                    .setTitle("Custom ping quarantined")
+                    .setDescription("Your custom ping %s. `%s` took too long to check against messages, so it was disabled. Please delete it and create a simpler one."
+                            .formatted(ping.id(), ping.regex().pattern()))
+                    .addField("Time taken (p99)", (meter.p99Nanos() / 1000) + "µs", true)
+                    .addField("Budget", Config.PINGS_MATCH_BUDGET + "µs", true)
+                    .build();
+            sendToUser(jda, ping.user(), channel -> channel.sendMessageEmbeds(embed).setContent(channel.getType() == ChannelType.PRIVATE ? null : "<@" + ping.user() + ">"))
+                    .queue();
+        });
+    }
+
     private static RestAction<? extends MessageChannel> getPingThread(JDA jda, long memberId) {
-        final Long threadId = Database.pings().withExtension(PingsDAO.class, db -> db.getThread(memberId));
-        if (threadId == null) {
+        final long threadId = THREADS.getThread(memberId);
+        if (threadId == 0) {
             return createNewThread(jda, memberId);
         } else {
             final ThreadChannel channel = jda.getThreadChannelById(threadId);
@@ -140,21 +297,17 @@ public class CustomPingListener implements EventListener {
                 .createThreadChannel("Custom ping notifications of " + memberId, true)
                 .setInvitable(false)
                 .setAutoArchiveDuration(ThreadChannel.AutoArchiveDuration.TIME_1_WEEK)
-                .onSuccess(channel -> Database.pings().useExtension(PingsDAO.class, db -> db.insertThread(memberId, channel.getIdLong())));
+                .onSuccess(channel -> THREADS.setThread(memberId, channel.getIdLong()));
     }
 
-    private static MessageCreateAction sendPingMessage(final Ping ping, final Message message, final MessageChannel channel) {
+    private static MessageCreateAction sendPingMessage(final long user, final List<Ping> pings, final Message message, final MessageChannel channel) {
         return channel.sendMessageEmbeds(
                 new EmbedBuilder()
                         .setAuthor("New ping from: %s".formatted(message.getAuthor().getName()), message.getJumpUrl(), message.getAuthor().getAvatarUrl())
-                        .addField(ping.message(), Utils.truncate(message.getContentRaw().isBlank() ? "[Blank]" : message.getContentRaw(), MessageEmbed.VALUE_MAX_LENGTH), false)
+                        .addField(Utils.truncate(pings.stream().map(Ping::message).collect(Collectors.joining(" | ")), MessageEmbed.TITLE_MAX_LENGTH), Utils.truncate(message.getContentRaw().isBlank() ? "[Blank]" : message.getContentRaw(), MessageEmbed.VALUE_MAX_LENGTH), false)
                         .addField("Link", message.getJumpUrl(), false)
                         .setTimestamp(message.getTimeCreated())
                         .build()
-        ).setContent(channel.getType() == ChannelType.PRIVATE ? null : "<@" + ping.user() + ">").setSuppressedNotifications(message.isSuppressedNotifications());
-    }
-
-    public static boolean canViewChannel(Member member, GuildChannel channel) {
-        return member.getPermissions(channel).contains(Permission.VIEW_CHANNEL);
+        ).setContent(channel.getType() == ChannelType.PRIVATE ? null : "<@" + user + ">").setSuppressedNotifications(message.isSuppressedNotifications());
     }
 }
@@ -0,0 +1,20 @@
+package uk.gemwire.camelot.listener;
+
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+import org.jetbrains.annotations.NotNull;
+import uk.gemwire.camelot.pings.PingDigests;
+
+/**
+ * The listener handling the page buttons of custom ping {@link PingDigests digests}.
+ * <p>The buttons encode the digest and the page in their ID, so they keep working after restarts, for as long as the digest is kept.</p>
+ */
+public class PingDigestListener implements EventListener {
+    @Override
+    public void onEvent(@NotNull GenericEvent gevent) {
+        if (!(gevent instanceof ButtonInteractionEvent event)) return;
+        if (!event.getComponentId().startsWith(PingDigests.BUTTON_PREFIX + "/")) return;
+        PingDigests.onButton(event);
+    }
+}
@@ -4,22 +4,28 @@ import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.events.GenericEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.EventListener;
+import net.dv8tion.jda.api.requests.RestAction;
 import net.dv8tion.jda.api.utils.messages.MessageCreateData;
 import net.dv8tion.jda.api.utils.messages.MessageEditData;
 import org.jetbrains.annotations.NotNull;
-import uk.gemwire.camelot.Database;
 import uk.gemwire.camelot.db.schemas.Trick;
-import uk.gemwire.camelot.db.transactionals.TricksDAO;
+import uk.gemwire.camelot.script.BufferedReply;
 import uk.gemwire.camelot.script.ScriptContext;
 import uk.gemwire.camelot.script.ScriptUtils;
+import uk.gemwire.camelot.script.TrickRegistry;
 
-import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * A listener listening for {@link MessageReceivedEvent} and seeing if they match a trick alias, which if found,
  * will be executed with the arguments.
  */
 public record TrickListener(String prefix) implements EventListener {
+    /**
+     * The registry of the known tricks, used to resolve them without querying the database.
+     */
+    public static final TrickRegistry TRICKS = new TrickRegistry();
+
     public void onEvent(@NotNull GenericEvent gevent) {
         if (!(gevent instanceof MessageReceivedEvent event)) return;
         if (!event.isFromGuild() || event.getAuthor().isBot() || event.getAuthor().isSystem()) return;
@@ -28,25 +34,24 @@ public record TrickListener(String prefix) implements EventListener {
         if (content.startsWith(prefix)) {
             final int nextSpace = content.indexOf(' ');
             final String trickName = content.substring(1, nextSpace < 0 ? content.length() : nextSpace);
-            final Trick trick = Database.main().withExtension(TricksDAO.class, db -> db.getTrick(trickName));
+            final Trick trick = TRICKS.get(trickName);
 
             if (trick == null) return;
 
             final String args = nextSpace < 0 ? "" : content.substring(nextSpace + 1);
 
-            final ScriptContext context = new ScriptContext(event.getJDA(), event.getGuild(), event.getMember(), event.getChannel(), new Consumer<>() {
+            final ScriptContext context = new ScriptContext(event.getJDA(), event.getGuild(), event.getMember(), event.getChannel(), new BufferedReply(new Function<>() {
                 Message reply;
                 @Override
-                public void accept(MessageCreateData create) {
+                public RestAction<?> apply(MessageCreateData create) {
                     if (reply == null) {
-                        reply = event.getMessage().reply(create).complete();
-                    } else {
-                        reply.editMessage(MessageEditData.fromCreateData(create)).complete();
+                        return event.getMessage().reply(create).onSuccess(message -> reply = message);
                     }
+                    return reply.editMessage(MessageEditData.fromCreateData(create));
                 }
-            });
+            }));
 
-            ScriptUtils.submitExecution(context, trick.script(), args);
+            ScriptUtils.submitExecution(context, trick, args);
         }
     }
 }
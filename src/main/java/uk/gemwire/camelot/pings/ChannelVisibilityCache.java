@@ -0,0 +1,91 @@
+package uk.gemwire.camelot.pings;
+
+import it.unimi.dsi.fastutil.longs.Long2BooleanMap;
+import it.unimi.dsi.fastutil.longs.Long2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.channel.attribute.IPermissionContainer;
+import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.channel.ChannelDeleteEvent;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRemoveEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleAddEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleRemoveEvent;
+import net.dv8tion.jda.api.events.guild.override.GenericPermissionOverrideEvent;
+import net.dv8tion.jda.api.events.guild.update.GuildUpdateOwnerEvent;
+import net.dv8tion.jda.api.events.role.RoleDeleteEvent;
+import net.dv8tion.jda.api.events.role.update.RoleUpdatePermissionsEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A cache of whether members can view channels, used to drop custom pings whose owners cannot see the channel they were triggered in
+ * without recomputing the member's permissions for every message.
+ * <p>Entries are keyed by the {@link GuildChannel#getPermissionContainer() permission container} of the channel, so that
+ * threads share the entries of their parent channel. The cache listens for the events that may change a member's access to a channel
+ * (role permission updates, member role updates, permission override updates and owner changes) and invalidates the affected entries.</p>
+ */
+public final class ChannelVisibilityCache implements EventListener {
+    /**
+     * A map of channel -> (member -> if the member can view the channel).
+     */
+    private final Long2ObjectMap<Long2BooleanMap> visibility = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * {@return if the {@code member} can view the given {@code channel}}
+     */
+    public boolean canView(Member member, GuildChannel channel) {
+        final IPermissionContainer container = channel.getPermissionContainer();
+        synchronized (visibility) {
+            final Long2BooleanMap channelVisibility = visibility.computeIfAbsent(container.getIdLong(), k -> new Long2BooleanOpenHashMap());
+            final long memberId = member.getIdLong();
+            if (channelVisibility.containsKey(memberId)) {
+                return channelVisibility.get(memberId);
+            }
+            final boolean canView = member.hasPermission(container, Permission.VIEW_CHANNEL);
+            channelVisibility.put(memberId, canView);
+            return canView;
+        }
+    }
+
+    @Override
+    public void onEvent(@NotNull GenericEvent gevent) {
+        if (gevent instanceof RoleUpdatePermissionsEvent || gevent instanceof RoleDeleteEvent || gevent instanceof GuildUpdateOwnerEvent || gevent instanceof GuildLeaveEvent) {
+            // Those may affect the access of any member to any channel, and they are rare, so forget everything
+            invalidateAll();
+        } else if (gevent instanceof GuildMemberRoleAddEvent event) {
+            invalidateMember(event.getMember().getIdLong());
+        } else if (gevent instanceof GuildMemberRoleRemoveEvent event) {
+            invalidateMember(event.getMember().getIdLong());
+        } else if (gevent instanceof GuildMemberRemoveEvent event) {
+            invalidateMember(event.getUser().getIdLong());
+        } else if (gevent instanceof GenericPermissionOverrideEvent event) {
+            invalidateChannel(event.getChannel().getIdLong());
+        } else if (gevent instanceof ChannelDeleteEvent event) {
+            invalidateChannel(event.getChannel().getIdLong());
+        }
+    }
+
+    private void invalidateAll() {
+        synchronized (visibility) {
+            visibility.clear();
+        }
+    }
+
+    private void invalidateMember(long member) {
+        synchronized (visibility) {
+            for (final Long2BooleanMap channelVisibility : visibility.values()) {
+                channelVisibility.remove(member);
+            }
+        }
+    }
+
+    private void invalidateChannel(long channel) {
+        synchronized (visibility) {
+            visibility.remove(channel);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package uk.gemwire.camelot.pings;
+
+import com.google.re2j.Pattern;
+import uk.gemwire.camelot.db.schemas.Ping;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * A {@link PingMatcher} that compiles the patterns of all pings into a tree of combined alternation patterns.
+ * <p>The root of the tree is a single pattern matching any of the pings, so a message that triggers no pings is rejected in one pass.
+ * When a combined pattern matches, its two halves are checked, until reaching buckets of at most {@value #BUCKET_SIZE} pings,
+ * which are checked individually. This means that a message triggering {@code k} of {@code n} pings costs roughly
+ * {@code k * log(n)} passes instead of {@code n}.</p>
+ * <p>Before walking the tree, the {@link LiteralIndex literal index} is used to find the pings that may match the message.
+ * Subtrees without any candidate are skipped, and subtrees with only a few candidates check them one by one instead of running the combined pattern.</p>
+ * <p>The combined patterns cannot tell which ping made them slow, so their time cannot be attributed to the {@link PingCosts costs} of the pings.
+ * Instead, every message is also checked against a rotating slice of {@value #SAMPLE_SIZE} pings individually, cycling through all of them,
+ * so that a slow ping is measured, and quarantined, even if it is only ever checked through the combined patterns, while the cost
+ * of a message stays independent of the amount of pings.</p>
+ */
+public final class CombinedPingMatcher implements PingMatcher {
+    /**
+     * The maximum amount of pings in a bucket that will be checked one by one.
+     */
+    public static final int BUCKET_SIZE = 4;
+
+    /**
+     * The amount of pings checked, and measured, individually for each message.
+     */
+    public static final int SAMPLE_SIZE = 2;
+
+    private final List<PingCosts.Meter> meters;
+    private final List<Ping> pings;
+    private final LiteralIndex index;
+    private final Node root;
+    private final int compiledPatterns;
+    private final AtomicLong sampled = new AtomicLong();
+
+    /**
+     * Compiles a combined matcher for the given pings.
+     *
+     * @param meters the meters of the pings to match
+     * @throws com.google.re2j.PatternSyntaxException if the combined patterns could not be compiled
+     */
+    public CombinedPingMatcher(List<PingCosts.Meter> meters) {
+        this.meters = List.copyOf(meters);
+        this.pings = this.meters.stream().map(PingCosts.Meter::ping).toList();
+        this.index = new LiteralIndex(pings);
+        this.root = build(0, this.meters.size());
+        this.compiledPatterns = pings.size() + countBranches(root);
+    }
+
+    @Override
+    public List<Ping> match(CharSequence content) {
+        final List<Ping> matched = new ArrayList<>();
+        collect(root, content, index.candidates(content), matched);
+        sample(content);
+        return matched;
+    }
+
+    /**
+     * Checks the next {@value #SAMPLE_SIZE} pings of the rotation against the {@code content}, only to measure them.
+     */
+    private void sample(CharSequence content) {
+        final int size = meters.size();
+        final int start = Math.floorMod(sampled.getAndAdd(SAMPLE_SIZE), size);
+        for (int i = 0; i < Math.min(SAMPLE_SIZE, size); i++) {
+            meters.get((start + i) % size).find(content);
+        }
+    }
+
+    @Override
+    public List<Ping> pings() {
+        return pings;
+    }
+
+    /**
+     * {@return the amount of compiled patterns of this matcher, which are the patterns of the pings and the combined pattern of every branch of the tree}
+     */
+    @Override
+    public int compiledPatterns() {
+        return compiledPatterns;
+    }
+
+    /**
+     * Add all pings under the given {@code node} that match the {@code content} to the {@code matched} list.
+     */
+    private void collect(Node node, CharSequence content, BitSet candidates, List<Ping> matched) {
+        final int first = candidates.nextSetBit(node.from());
+        if (first < 0 || first >= node.to()) return; // None of the pings can match
+
+        if (node instanceof Branch branch && countCandidates(candidates, first, node.to()) > BUCKET_SIZE) {
+            if (branch.pattern().matcher(content).find()) {
+                collect(branch.left(), content, candidates, matched);
+                collect(branch.right(), content, candidates, matched);
+            }
+            return;
+        }
+
+        // Only a few pings may match, so check them one by one
+        for (int i = first; i >= 0 && i < node.to(); i = candidates.nextSetBit(i + 1)) {
+            final PingCosts.Meter meter = meters.get(i);
+            if (meter.find(content)) {
+                matched.add(meter.ping());
+            }
+        }
+    }
+
+    /**
+     * {@return the amount of candidates between {@code from} and {@code to}, stopping after {@value #BUCKET_SIZE} + 1}
+     */
+    private static int countCandidates(BitSet candidates, int from, int to) {
+        int count = 0;
+        for (int i = from; i >= 0 && i < to && count <= BUCKET_SIZE; i = candidates.nextSetBit(i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static int countBranches(Node node) {
+        return node instanceof Branch branch ? 1 + countBranches(branch.left()) + countBranches(branch.right()) : 0;
+    }
+
+    private Node build(int from, int to) {
+        if (to - from <= BUCKET_SIZE) {
+            return new Bucket(from, to);
+        }
+        final int middle = (from + to) / 2;
+        return new Branch(from, to, combine(meters.subList(from, to)), build(from, middle), build(middle, to));
+    }
+
+    /**
+     * {@return a pattern matching any of the pings of the given {@code meters}}
+     */
+    private static Pattern combine(List<PingCosts.Meter> meters) {
+        return Pattern.compile(meters.stream()
+                .map(PingCosts.Meter::ping)
+                .map(ping -> "(?:" + inlineFlags(ping.regex()) + ping.regex().pattern() + ")")
+                .collect(Collectors.joining("|")));
+    }
+
+    /**
+     * {@return the inline flags equivalent to the flags the {@code pattern} was compiled with}
+     */
+    private static String inlineFlags(Pattern pattern) {
+        final int flags = pattern.flags();
+        if ((flags & (Pattern.CASE_INSENSITIVE | Pattern.DOTALL | Pattern.MULTILINE)) == 0) return "";
+        final StringBuilder builder = new StringBuilder("(?");
+        if ((flags & Pattern.CASE_INSENSITIVE) != 0) builder.append('i');
+        if ((flags & Pattern.DOTALL) != 0) builder.append('s');
+        if ((flags & Pattern.MULTILINE) != 0) builder.append('m');
+        return builder.append(')').toString();
+    }
+
+    /**
+     * A node of the tree, covering the pings between {@code from} (inclusive) and {@code to} (exclusive).
+     */
+    private sealed interface Node permits Branch, Bucket {
+        int from();
+
+        int to();
+    }
+
+    /**
+     * A node whose {@code pattern} matches if any of the pings in its children match.
+     */
+    private record Branch(int from, int to, Pattern pattern, Node left, Node right) implements Node {
+    }
+
+    /**
+     * A leaf node whose pings are checked one by one, {@link PingCosts.Meter#find(CharSequence) measuring} their costs.
+     */
+    private record Bucket(int from, int to) implements Node {
+    }
+}
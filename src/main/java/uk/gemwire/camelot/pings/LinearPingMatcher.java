@@ -0,0 +1,44 @@
+package uk.gemwire.camelot.pings;
+
+import uk.gemwire.camelot.db.schemas.Ping;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A {@link PingMatcher} that checks each ping's pattern against the message, one by one.
+ * <p>Only the pings whose required literals are found in the message by the {@link LiteralIndex literal index} are checked.</p>
+ */
+public final class LinearPingMatcher implements PingMatcher {
+    private final List<PingCosts.Meter> meters;
+    private final List<Ping> pings;
+    private final LiteralIndex index;
+
+    /**
+     * @param meters the meters of the pings to check
+     */
+    public LinearPingMatcher(List<PingCosts.Meter> meters) {
+        this.meters = List.copyOf(meters);
+        this.pings = this.meters.stream().map(PingCosts.Meter::ping).toList();
+        this.index = new LiteralIndex(pings);
+    }
+
+    @Override
+    public List<Ping> match(CharSequence content) {
+        final List<Ping> matched = new ArrayList<>();
+        final BitSet candidates = index.candidates(content);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final PingCosts.Meter meter = meters.get(i);
+            if (meter.find(content)) {
+                matched.add(meter.ping());
+            }
+        }
+        return matched;
+    }
+
+    @Override
+    public List<Ping> pings() {
+        return pings;
+    }
+}
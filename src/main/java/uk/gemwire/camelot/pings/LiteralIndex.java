@@ -0,0 +1,138 @@
+package uk.gemwire.camelot.pings;
+
+import uk.gemwire.camelot.db.schemas.Ping;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * An Aho-Corasick automaton over the {@link RequiredLiterals required literals} of a list of pings, used to find the pings
+ * that may match a message in a single pass over it, before running their patterns.
+ * <p>Pings without any required literal are always considered candidates.</p>
+ */
+public final class LiteralIndex {
+    private static final int[] NO_OUTPUTS = new int[0];
+
+    private final BitSet always = new BitSet();
+    private final boolean alwaysAll;
+    private final Node root = new Node();
+
+    /**
+     * Builds the index of the given {@code pings}.
+     *
+     * @param pings the pings to index. The candidates are identified by their index in this list
+     */
+    public LiteralIndex(List<Ping> pings) {
+        for (int i = 0; i < pings.size(); i++) {
+            final Set<String> literals = RequiredLiterals.extract(pings.get(i).regex());
+            if (literals == null) {
+                always.set(i);
+            } else {
+                for (final String literal : literals) {
+                    insert(literal, i);
+                }
+            }
+        }
+        buildFailureLinks();
+        this.alwaysAll = always.cardinality() == pings.size();
+    }
+
+    /**
+     * {@return the indices of the pings that may match the given {@code content}}
+     */
+    public BitSet candidates(CharSequence content) {
+        final BitSet candidates = (BitSet) always.clone();
+        if (alwaysAll) return candidates;
+
+        final String normalized = RequiredLiterals.normalize(content);
+        Node node = root;
+        for (int i = 0; i < normalized.length(); i++) {
+            final char ch = normalized.charAt(i);
+            Node next;
+            while ((next = node.child(ch)) == null && node != root) {
+                node = node.fail;
+            }
+            node = next == null ? root : next;
+            for (final int output : node.outputs) {
+                candidates.set(output);
+            }
+        }
+        return candidates;
+    }
+
+    private void insert(String literal, int ping) {
+        Node node = root;
+        for (int i = 0; i < literal.length(); i++) {
+            final char ch = literal.charAt(i);
+            Node next = node.child(ch);
+            if (next == null) {
+                next = new Node();
+                node.addChild(ch, next);
+            }
+            node = next;
+        }
+        node.addOutputs(new int[] {ping});
+    }
+
+    private void buildFailureLinks() {
+        root.fail = root;
+        final Queue<Node> queue = new ArrayDeque<>();
+        for (final Node child : root.children) {
+            child.fail = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            final Node node = queue.remove();
+            for (int i = 0; i < node.keys.length; i++) {
+                final char ch = node.keys[i];
+                final Node child = node.children[i];
+                Node fail = node.fail;
+                while (fail.child(ch) == null && fail != root) {
+                    fail = fail.fail;
+                }
+                final Node failChild = fail.child(ch);
+                child.fail = failChild == null || failChild == child ? root : failChild;
+                // A node also outputs everything its longest proper suffix outputs
+                child.addOutputs(child.fail.outputs);
+                queue.add(child);
+            }
+        }
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private Node fail;
+        private int[] outputs = NO_OUTPUTS;
+
+        Node child(char ch) {
+            final int index = Arrays.binarySearch(keys, ch);
+            return index < 0 ? null : children[index];
+        }
+
+        void addChild(char ch, Node child) {
+            final int insertion = -(Arrays.binarySearch(keys, ch) + 1);
+            final char[] newKeys = new char[keys.length + 1];
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertion);
+            System.arraycopy(children, 0, newChildren, 0, insertion);
+            newKeys[insertion] = ch;
+            newChildren[insertion] = child;
+            System.arraycopy(keys, insertion, newKeys, insertion + 1, keys.length - insertion);
+            System.arraycopy(children, insertion, newChildren, insertion + 1, children.length - insertion);
+            keys = newKeys;
+            children = newChildren;
+        }
+
+        void addOutputs(int[] toAdd) {
+            if (toAdd.length == 0) return;
+            final int[] newOutputs = Arrays.copyOf(outputs, outputs.length + toAdd.length);
+            System.arraycopy(toAdd, 0, newOutputs, outputs.length, toAdd.length);
+            outputs = newOutputs;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package uk.gemwire.camelot.pings;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the syntax of re2j patterns into a tree, shared by the static analyses of custom ping patterns
+ * ({@link RequiredLiterals} and {@link PingComplexity}), so that they understand patterns the same way.
+ * <p>re2j does not expose the tree it parses patterns into, so the patterns are parsed again. The tree only distinguishes
+ * what the analyses need, and the parser expects a pattern that re2j already compiled: it throws a {@link RuntimeException}
+ * if the pattern is malformed.</p>
+ */
+final class PatternSyntax {
+    private final String pattern;
+    private int index;
+
+    private PatternSyntax(String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Parses the given {@code pattern}.
+     *
+     * @param pattern the source of the pattern
+     * @return the root of the tree
+     * @throws IllegalArgumentException if the pattern has an unbalanced group
+     */
+    static Node parse(String pattern) {
+        final PatternSyntax parser = new PatternSyntax(pattern);
+        final Node root = parser.alternation();
+        if (parser.index < pattern.length()) {
+            throw new IllegalArgumentException("Unbalanced group at " + parser.index + " in " + pattern);
+        }
+        return root;
+    }
+
+    /**
+     * Parses an alternation, until the end of the pattern or of the current group.
+     */
+    private Node alternation() {
+        final Node first = concatenation();
+        if (index >= pattern.length() || pattern.charAt(index) != '|') return first;
+
+        final List<Node> branches = new ArrayList<>();
+        branches.add(first);
+        while (index < pattern.length() && pattern.charAt(index) == '|') {
+            index++;
+            branches.add(concatenation());
+        }
+        return new Alternation(branches);
+    }
+
+    private Concatenation concatenation() {
+        final List<Node> items = new ArrayList<>();
+        while (index < pattern.length()) {
+            final char ch = pattern.charAt(index);
+            if (ch == '|' || ch == ')') break;
+            index++;
+
+            final Node atom = switch (ch) {
+                case '(' -> group();
+                case '[' -> characterClass();
+                case '.' -> new AnyCharacter();
+                case '^', '$' -> new Assertion(ch);
+                case '\\' -> escape();
+                default -> new Literal(ch);
+            };
+            items.add(quantified(atom));
+        }
+        return new Concatenation(items);
+    }
+
+    /**
+     * Parses a group, after its opening parenthesis.
+     */
+    private Node group() {
+        boolean capturing = true;
+        String flags = "";
+        if (index < pattern.length() && pattern.charAt(index) == '?') {
+            index++;
+            if (pattern.charAt(index) == 'P' || pattern.charAt(index) == '<') {
+                // Named group
+                index = pattern.indexOf('>', index) + 1;
+            } else {
+                // Flags, either (?flags) or (?flags:...)
+                final int start = index;
+                while (pattern.charAt(index) != ')' && pattern.charAt(index) != ':') index++;
+                flags = pattern.substring(start, index);
+                if (pattern.charAt(index++) == ')') {
+                    return new Flags(flags);
+                }
+                capturing = false;
+            }
+        }
+        final Node body = alternation();
+        index++; // Closing parenthesis
+        return new Group(body, capturing, flags);
+    }
+
+    /**
+     * Parses a character class, after its opening bracket.
+     */
+    private CharacterClass characterClass() {
+        final boolean negated = pattern.charAt(index) == '^';
+        if (negated) index++;
+        if (pattern.charAt(index) == ']') index++; // A leading ] is a literal
+        while (pattern.charAt(index) != ']') {
+            if (pattern.charAt(index) == '\\') {
+                index++;
+            } else if (pattern.startsWith("[:", index)) {
+                index = pattern.indexOf(":]", index + 2) + 1;
+            }
+            index++;
+        }
+        index++;
+        return new CharacterClass(negated);
+    }
+
+    /**
+     * Parses an escape, after its backslash.
+     */
+    private Node escape() {
+        final char ch = pattern.charAt(index++);
+        return switch (ch) {
+            case 'n' -> new Literal('\n');
+            case 't' -> new Literal('\t');
+            case 'r' -> new Literal('\r');
+            case 'f' -> new Literal('\f');
+            case 'a' -> new Literal(7);
+            case 'v' -> new Literal(11);
+            case 'x' -> {
+                final String hex;
+                if (pattern.charAt(index) == '{') {
+                    final int end = pattern.indexOf('}', index);
+                    hex = pattern.substring(index + 1, end);
+                    index = end + 1;
+                } else {
+                    hex = pattern.substring(index, index + 2);
+                    index += 2;
+                }
+                yield new Literal(Integer.parseInt(hex, 16));
+            }
+            case 'p', 'P' -> {
+                if (pattern.charAt(index) == '{') {
+                    index = pattern.indexOf('}', index) + 1;
+                } else {
+                    index++;
+                }
+                yield new Escape(ch);
+            }
+            case 'Q' -> {
+                final int end = pattern.indexOf("\\E", index);
+                final String quoted = pattern.substring(index, end < 0 ? pattern.length() : end);
+                index = end < 0 ? pattern.length() : end + 2;
+                yield new Quoted(quoted);
+            }
+            // Character classes and assertions, or escaped punctuation
+            default -> Character.isLetterOrDigit(ch) ? new Escape(ch) : new Literal(ch);
+        };
+    }
+
+    /**
+     * Parses the quantifier following the given {@code atom}, if present.
+     */
+    private Node quantified(Node atom) {
+        if (index >= pattern.length()) return atom;
+        final Repeat repeat;
+        switch (pattern.charAt(index)) {
+            case '*' -> repeat = new Repeat(atom, 0, Repeat.UNBOUNDED);
+            case '+' -> repeat = new Repeat(atom, 1, Repeat.UNBOUNDED);
+            case '?' -> repeat = new Repeat(atom, 0, 1);
+            case '{' -> {
+                final int end = pattern.indexOf('}', index);
+                if (end < 0 || !pattern.substring(index + 1, end).matches("\\d+(,\\d*)?")) {
+                    return atom; // Literal {
+                }
+                final String[] bounds = pattern.substring(index + 1, end).split(",", -1);
+                final int min = Integer.parseInt(bounds[0]);
+                final int max = bounds.length == 1 ? min : bounds[1].isEmpty() ? Repeat.UNBOUNDED : Integer.parseInt(bounds[1]);
+                repeat = new Repeat(atom, min, max);
+                index = end;
+            }
+            default -> {
+                return atom;
+            }
+        }
+        index++;
+        // Non-greedy quantifier
+        if (index < pattern.length() && pattern.charAt(index) == '?') index++;
+        return repeat;
+    }
+
+    /**
+     * A node of the syntax tree.
+     */
+    sealed interface Node permits Alternation, Concatenation, Group, Flags, Repeat, Literal, Quoted, CharacterClass, AnyCharacter, Escape, Assertion {
+    }
+
+    /**
+     * An alternation of at least two {@code branches}.
+     */
+    record Alternation(List<Node> branches) implements Node {
+    }
+
+    /**
+     * A sequence of {@code items}, which may be empty.
+     */
+    record Concatenation(List<Node> items) implements Node {
+    }
+
+    /**
+     * A group, which may set {@code flags} for its {@code body}, like {@code (?i:...)}.
+     */
+    record Group(Node body, boolean capturing, String flags) implements Node {
+    }
+
+    /**
+     * A group only setting {@code flags} for the rest of the enclosing group, like {@code (?i)}.
+     */
+    record Flags(String flags) implements Node {
+    }
+
+    /**
+     * A repetition of an {@code atom} between {@code min} and {@code max} times.
+     *
+     * @param max the maximum amount of repetitions, or {@link #UNBOUNDED}
+     */
+    record Repeat(Node atom, int min, int max) implements Node {
+        static final int UNBOUNDED = -1;
+
+        boolean unbounded() {
+            return max == UNBOUNDED;
+        }
+    }
+
+    /**
+     * A single literal character, given as a code point.
+     */
+    record Literal(int character) implements Node {
+    }
+
+    /**
+     * A quoted literal ({@code \Q...\E}).
+     */
+    record Quoted(String text) implements Node {
+    }
+
+    /**
+     * A bracketed character class, like {@code [a-z]}.
+     */
+    record CharacterClass(boolean negated) implements Node {
+    }
+
+    /**
+     * The {@code .} wildcard.
+     */
+    record AnyCharacter() implements Node {
+    }
+
+    /**
+     * An escape that is not a literal character, being either a character class (like {@code \d} or {@code \pL}) or an assertion (like {@code \b} or {@code \A}).
+     */
+    record Escape(char name) implements Node {
+    }
+
+    /**
+     * The {@code ^} or {@code $} assertions.
+     */
+    record Assertion(char symbol) implements Node {
+    }
+}
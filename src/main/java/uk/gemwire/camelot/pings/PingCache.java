@@ -0,0 +1,256 @@
+package uk.gemwire.camelot.pings;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.google.re2j.Pattern;
+import com.google.re2j.PatternSyntaxException;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMaps;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import uk.gemwire.camelot.BotMain;
+import uk.gemwire.camelot.Database;
+import uk.gemwire.camelot.configuration.Config;
+import uk.gemwire.camelot.db.schemas.Ping;
+import uk.gemwire.camelot.db.schemas.RawPing;
+import uk.gemwire.camelot.db.transactionals.PingsDAO;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * A cache of the {@link PingMatcher ping matchers} of each guild.
+ * <p>The cache holds the {@link RawPing raw pings} of every guild, and only compiles the matcher of a guild when it is first needed.
+ * The compiled matchers are kept in an LRU bounded by the {@link Config#PINGS_MAX_COMPILED amount of compiled patterns},
+ * and the matchers of guilds in which no message was sent for {@link Config#PINGS_IDLE_EVICTION a while} are evicted.
+ * Since the {@link PingCosts.Meter meters} of the pings reference their patterns, the costs of the pings of evicted guilds are forgotten too.</p>
+ * <p>The raw pings are published as an immutable snapshot through an {@link AtomicReference}, so reads never lock, and can happen
+ * in parallel with each other and with updates. Updates build a new snapshot on the side and then swap it in, meaning that
+ * readers will either see the old snapshot or the new one, never a partially updated one.</p>
+ * <p>All ping changes must go through the write methods of the cache ({@link #create(long, long, Pattern, String)}, {@link #delete(int)},
+ * {@link #deleteAllOf(long, long)} and {@link #quarantine(int)}), which write to the database and apply the change to the cache together.
+ * Only the matcher of the affected guild is rebuilt, if it is compiled, instead of doing a full {@link #refresh()}.
+ * Writes and refreshes are serialized, so a refresh either sees a write in the database or runs entirely before it, and can never publish
+ * a snapshot that misses a write whose change was already applied.</p>
+ */
+public final class PingCache {
+    private final AtomicReference<Long2ObjectMap<List<RawPing>>> snapshot = new AtomicReference<>(Long2ObjectMaps.emptyMap());
+
+    /**
+     * A lock held by writers, both while writing to the database and while updating the snapshot, so that concurrent updates cannot publish out of order.
+     * Readers never acquire it.
+     */
+    private final Object writeLock = new Object();
+
+    private final PingCosts costs;
+    private final Cache<Long, PingMatcher> matchers;
+
+    /**
+     * @param costs the tracker used to measure the costs of the pings
+     */
+    public PingCache(PingCosts costs) {
+        this.costs = costs;
+        this.matchers = Caffeine.newBuilder()
+                .maximumWeight(Config.PINGS_MAX_COMPILED)
+                .weigher((Long guild, PingMatcher matcher) -> matcher.compiledPatterns())
+                .expireAfterAccess(Duration.ofMinutes(Config.PINGS_IDLE_EVICTION))
+                .removalListener((Long guild, PingMatcher matcher, RemovalCause cause) -> {
+                    if (matcher != null && cause.wasEvicted()) {
+                        matcher.pings().forEach(ping -> costs.forget(ping.id()));
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * {@return the matcher of the pings in the given {@code guild}, compiling it if needed}
+     */
+    public PingMatcher get(long guild) {
+        if (!snapshot.get().containsKey(guild)) return PingMatcher.EMPTY;
+        return matchers.get(guild, this::compileGuild);
+    }
+
+    /**
+     * Reloads all pings from the database. The matchers of the guilds will be recompiled when they are next needed.
+     */
+    public void refresh() {
+        synchronized (writeLock) {
+            final Long2ObjectMap<List<RawPing>> pings = Database.pings().withExtension(PingsDAO.class, PingsDAO::getAllPings);
+            snapshot.set(Long2ObjectMaps.unmodifiable(pings));
+            matchers.invalidateAll();
+        }
+    }
+
+    /**
+     * Creates a ping, inserting it into the database and adding it to the cache.
+     *
+     * @param guild   the guild to create the ping in
+     * @param user    the owner of the ping
+     * @param pattern the pattern of the ping
+     * @param message the message of the ping
+     * @return the ID of the created ping
+     */
+    public int create(long guild, long user, Pattern pattern, String message) {
+        synchronized (writeLock) {
+            final int id = Database.pings().withExtension(PingsDAO.class, db -> db.insert(guild, user, pattern.pattern(), message));
+            addPing(guild, new Ping(id, user, pattern, message));
+            return id;
+        }
+    }
+
+    /**
+     * Deletes the ping with the given {@code id} from the database and the cache.
+     */
+    public void delete(int id) {
+        synchronized (writeLock) {
+            Database.pings().useExtension(PingsDAO.class, db -> db.deletePing(id));
+            removePing(id);
+        }
+    }
+
+    /**
+     * Quarantines the ping with the given {@code id} in the database, and removes it from the cache.
+     */
+    public void quarantine(int id) {
+        synchronized (writeLock) {
+            Database.pings().useExtension(PingsDAO.class, db -> db.quarantine(id));
+            removePing(id);
+        }
+    }
+
+    /**
+     * Deletes all pings of the {@code user} in the {@code guild} from the database and the cache.
+     *
+     * @return the deleted pings
+     */
+    public List<Ping> deleteAllOf(long user, long guild) {
+        synchronized (writeLock) {
+            final List<Ping> deleted = Database.pings().inTransaction(handle -> {
+                final PingsDAO db = handle.attach(PingsDAO.class);
+                final List<Ping> pings = db.getAllPingsOf(user, guild);
+                if (!pings.isEmpty()) {
+                    db.deletePingsOf(user, guild);
+                }
+                return pings;
+            });
+            if (!deleted.isEmpty()) {
+                removeAllOf(user, guild);
+            }
+            return deleted;
+        }
+    }
+
+    /**
+     * Adds a newly-created ping to the cache.
+     *
+     * @param guild the guild the ping was created in
+     * @param ping  the ping to add
+     */
+    private void addPing(long guild, Ping ping) {
+        update(guild, pings -> {
+            final List<RawPing> newPings = new ArrayList<>(pings.size() + 1);
+            newPings.addAll(pings);
+            newPings.add(new RawPing(ping.id(), ping.user(), ping.regex().pattern(), ping.message()));
+            return newPings;
+        }, Int2ObjectMaps.singleton(ping.id(), ping));
+    }
+
+    /**
+     * Removes the ping with the given {@code id} from the cache.
+     *
+     * @param id the ID of the ping to remove
+     */
+    private void removePing(int id) {
+        synchronized (writeLock) {
+            for (final var entry : snapshot.get().long2ObjectEntrySet()) {
+                if (entry.getValue().stream().anyMatch(ping -> ping.id() == id)) {
+                    update(entry.getLongKey(), pings -> pings.stream().filter(ping -> ping.id() != id).toList(), Int2ObjectMaps.emptyMap());
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all pings of the {@code user} in the {@code guild} from the cache.
+     *
+     * @param user  the user whose pings to remove
+     * @param guild the guild to remove the pings from
+     */
+    private void removeAllOf(long user, long guild) {
+        update(guild, pings -> pings.stream().anyMatch(ping -> ping.user() == user) ? pings.stream().filter(ping -> ping.user() != user).toList() : pings, Int2ObjectMaps.emptyMap());
+    }
+
+    /**
+     * Updates the pings of a single guild, recompiling only the matcher of that guild, if it is compiled.
+     * <p>The patterns of the existing pings are reused, so no ping is recompiled.</p>
+     *
+     * @param guild    the guild to update
+     * @param updater  a function that computes the new pings of the guild from the current ones, or returns them as-is if they do not change
+     * @param compiled the new pings that are already compiled
+     */
+    private void update(long guild, UnaryOperator<List<RawPing>> updater, Int2ObjectMap<Ping> compiled) {
+        synchronized (writeLock) {
+            final Long2ObjectMap<List<RawPing>> current = snapshot.get();
+            final List<RawPing> oldPings = current.getOrDefault(guild, List.of());
+            final List<RawPing> newPings = updater.apply(oldPings);
+            if (newPings == oldPings) return; // Nothing changed, so don't recompile the matcher
+            final Long2ObjectMap<List<RawPing>> pings = new Long2ObjectOpenHashMap<>(current);
+            if (newPings.isEmpty()) {
+                pings.remove(guild);
+            } else {
+                pings.put(guild, List.copyOf(newPings));
+            }
+            snapshot.set(Long2ObjectMaps.unmodifiable(pings));
+
+            // If the matcher is not compiled, it will be compiled from the new snapshot when needed
+            matchers.asMap().computeIfPresent(guild, (k, matcher) -> {
+                if (newPings.isEmpty()) return null;
+                final Int2ObjectMap<Ping> existing = new Int2ObjectOpenHashMap<>(compiled);
+                matcher.pings().forEach(ping -> existing.putIfAbsent(ping.id(), ping));
+                return PingMatcher.create(compile(newPings, existing), costs);
+            });
+
+            // Forget the costs of the removed pings
+            final IntSet remaining = new IntOpenHashSet(newPings.size());
+            newPings.forEach(ping -> remaining.add(ping.id()));
+            oldPings.forEach(ping -> {
+                if (!remaining.contains(ping.id())) {
+                    costs.forget(ping.id());
+                }
+            });
+        }
+    }
+
+    private PingMatcher compileGuild(long guild) {
+        return PingMatcher.create(compile(snapshot.get().getOrDefault(guild, List.of()), Int2ObjectMaps.emptyMap()), costs);
+    }
+
+    /**
+     * Compiles the given raw {@code pings}, reusing the {@code existing} compiled pings whose pattern did not change.
+     */
+    private static List<Ping> compile(List<RawPing> pings, Int2ObjectMap<Ping> existing) {
+        final List<Ping> compiled = new ArrayList<>(pings.size());
+        for (final RawPing raw : pings) {
+            final Ping ping = existing.get(raw.id());
+            if (ping != null && ping.regex().pattern().equals(raw.regex())) {
+                compiled.add(ping);
+                continue;
+            }
+            try {
+                compiled.add(raw.compile());
+            } catch (PatternSyntaxException exception) {
+                BotMain.LOGGER.warn("Custom ping {} of user {} has an invalid pattern: ", raw.id(), raw.user(), exception);
+            }
+        }
+        return compiled;
+    }
+}
@@ -0,0 +1,250 @@
+package uk.gemwire.camelot.pings;
+
+import com.google.re2j.Pattern;
+import uk.gemwire.camelot.configuration.Config;
+import uk.gemwire.camelot.pings.PatternSyntax.Alternation;
+import uk.gemwire.camelot.pings.PatternSyntax.AnyCharacter;
+import uk.gemwire.camelot.pings.PatternSyntax.Assertion;
+import uk.gemwire.camelot.pings.PatternSyntax.CharacterClass;
+import uk.gemwire.camelot.pings.PatternSyntax.Concatenation;
+import uk.gemwire.camelot.pings.PatternSyntax.Escape;
+import uk.gemwire.camelot.pings.PatternSyntax.Flags;
+import uk.gemwire.camelot.pings.PatternSyntax.Group;
+import uk.gemwire.camelot.pings.PatternSyntax.Node;
+import uk.gemwire.camelot.pings.PatternSyntax.Quoted;
+import uk.gemwire.camelot.pings.PatternSyntax.Repeat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A static estimate of how expensive a custom ping pattern is to match, computed when the ping is created.
+ * <p>The cost is made of:</p>
+ * <ul>
+ *     <li>the size of the program the pattern compiles to, estimated from its syntax, as re2j does not expose the compiled program.
+ *     Bounded repetitions are expanded, like re2j does;</li>
+ *     <li>the width of the widest alternation, as every branch is a thread the matcher has to follow;</li>
+ *     <li>the unbounded repetitions of wildcards (like {@code .*} or {@code \S+}) in the top-level alternatives that aren't anchored to the start
+ *     of the message, which may be tried from every position of the message;</li>
+ *     <li>whether the pattern has {@link RequiredLiterals required literals}, since patterns without any are checked against every message.</li>
+ * </ul>
+ * <p>Patterns are understood through the same {@link PatternSyntax parser} as the {@link RequiredLiterals required literals}.
+ * The estimates saturate at {@link Integer#MAX_VALUE}, so that nested repetitions cannot overflow into a negative cost.</p>
+ *
+ * @param programSize      the estimated size of the compiled program
+ * @param alternationWidth the amount of branches of the widest alternation
+ * @param wildcards        the amount of unbounded wildcard repetitions in alternatives that are not anchored
+ * @param hasLiterals      whether the pattern has required literals
+ */
+public record PingComplexity(int programSize, int alternationWidth, int wildcards, boolean hasLiterals) {
+    /**
+     * The cost every ping has, regardless of its pattern, so that the amount of pings of a user is bounded too.
+     */
+    public static final int BASE_COST = 10;
+    public static final int ALTERNATION_COST = 2;
+    public static final int WILDCARD_COST = 25;
+    public static final int NO_LITERAL_COST = 50;
+
+    /**
+     * Estimates the complexity of the given {@code pattern}.
+     */
+    public static PingComplexity of(Pattern pattern) {
+        final String source = pattern.pattern();
+        final boolean hasLiterals = RequiredLiterals.extract(pattern) != null;
+        try {
+            final Node root = PatternSyntax.parse(source);
+            final Estimator estimator = new Estimator((pattern.flags() & Pattern.MULTILINE) != 0 || setsMultiline(root));
+            final long size = estimator.topLevel(root);
+            return new PingComplexity(saturate(size), estimator.widestAlternation, estimator.wildcards, hasLiterals);
+        } catch (RuntimeException ex) {
+            // Should be impossible with a compiled pattern, but assume the worst if we can't understand it
+            return new PingComplexity(saturate(source.length() * 2L), 1 + count(source, '|'), count(source, '*') + count(source, '+'), hasLiterals);
+        }
+    }
+
+    /**
+     * {@return the total cost of the pattern}
+     */
+    public int cost() {
+        return saturate(BASE_COST + (long) programSize + ALTERNATION_COST * (alternationWidth - 1L) + WILDCARD_COST * (long) wildcards + (hasLiterals ? 0 : NO_LITERAL_COST));
+    }
+
+    /**
+     * {@return if this pattern is over the {@link Config#PINGS_MAX_COMPLEXITY maximum complexity} of a single ping}
+     */
+    public boolean isTooComplex() {
+        return Config.PINGS_MAX_COMPLEXITY > 0 && cost() > Config.PINGS_MAX_COMPLEXITY;
+    }
+
+    /**
+     * {@return a human-readable breakdown of the cost}
+     */
+    public String explain() {
+        final List<String> parts = new ArrayList<>();
+        parts.add("program size: " + programSize);
+        if (alternationWidth > 1) {
+            parts.add("alternation of " + alternationWidth + " branches: " + ALTERNATION_COST * (alternationWidth - 1));
+        }
+        if (wildcards > 0) {
+            parts.add(wildcards + " unanchored wildcard repetitions (like `.*`): " + WILDCARD_COST * wildcards);
+        }
+        if (!hasLiterals) {
+            parts.add("no literal text of at least " + RequiredLiterals.MIN_LENGTH + " characters that every match contains: " + NO_LITERAL_COST);
+        }
+        return "base: " + BASE_COST + ", " + String.join(", ", parts);
+    }
+
+    /**
+     * {@return the total cost of the given {@code patterns}}
+     */
+    public static int totalCost(List<Pattern> patterns) {
+        return saturate(patterns.stream().mapToLong(pattern -> of(pattern).cost()).sum());
+    }
+
+    private static int saturate(long value) {
+        return (int) Math.min(value, Integer.MAX_VALUE);
+    }
+
+    private static int count(String source, char ch) {
+        return (int) source.chars().filter(c -> c == ch).count();
+    }
+
+    /**
+     * {@return whether the given {@code node}, or any node under it, enables the multiline flag, which makes {@code ^} match at the start of every line}
+     */
+    private static boolean setsMultiline(Node node) {
+        if (node instanceof Alternation alternation) {
+            return alternation.branches().stream().anyMatch(PingComplexity::setsMultiline);
+        } else if (node instanceof Concatenation concatenation) {
+            return concatenation.items().stream().anyMatch(PingComplexity::setsMultiline);
+        } else if (node instanceof Group group) {
+            return enablesMultiline(group.flags()) || setsMultiline(group.body());
+        } else if (node instanceof Flags flags) {
+            return enablesMultiline(flags.flags());
+        } else if (node instanceof Repeat repeat) {
+            return setsMultiline(repeat.atom());
+        }
+        return false;
+    }
+
+    private static boolean enablesMultiline(String flags) {
+        // Flags after a - are cleared
+        final int cleared = flags.indexOf('-');
+        return flags.substring(0, cleared < 0 ? flags.length() : cleared).indexOf('m') >= 0;
+    }
+
+    /**
+     * Estimates the size of the program of a pattern, collecting the widest alternation and the unanchored wildcards on the way.
+     */
+    private static final class Estimator {
+        /**
+         * The maximum amount of repetitions re2j allows.
+         */
+        private static final int MAX_REPEAT = 1000;
+
+        private final boolean multiline;
+        private int widestAlternation = 1;
+        private int wildcards;
+        private boolean countWildcards;
+
+        private Estimator(boolean multiline) {
+            this.multiline = multiline;
+        }
+
+        /**
+         * Estimates the size of the root of a pattern, only counting the wildcards of the top-level alternatives that are not anchored.
+         */
+        long topLevel(Node root) {
+            if (root instanceof Alternation alternation) {
+                return alternation(alternation, true);
+            }
+            countWildcards = !anchored(root);
+            return size(root);
+        }
+
+        /**
+         * {@return whether every match of the given {@code node} starts at the start of the message}
+         */
+        private boolean anchored(Node node) {
+            if (node instanceof Concatenation concatenation) {
+                for (final Node item : concatenation.items()) {
+                    // Flags do not match anything, so the anchor may come after them
+                    if (!(item instanceof Flags)) return anchored(item);
+                }
+                return false;
+            } else if (node instanceof Alternation alternation) {
+                return alternation.branches().stream().allMatch(this::anchored);
+            } else if (node instanceof Group group) {
+                return anchored(group.body());
+            } else if (node instanceof Assertion assertion) {
+                return assertion.symbol() == '^' && !multiline;
+            } else if (node instanceof Escape escape) {
+                return escape.name() == 'A';
+            }
+            return false;
+        }
+
+        /**
+         * {@return the estimated size of the program of the given {@code node}}
+         */
+        private long size(Node node) {
+            if (node instanceof Alternation alternation) {
+                return alternation(alternation, false);
+            } else if (node instanceof Concatenation concatenation) {
+                long size = 0;
+                for (final Node item : concatenation.items()) {
+                    size = saturate(size + size(item));
+                }
+                return size;
+            } else if (node instanceof Group group) {
+                return saturate(size(group.body()) + (group.capturing() ? 2 : 0));
+            } else if (node instanceof Flags) {
+                return 0;
+            } else if (node instanceof Repeat repeat) {
+                return repeat(repeat);
+            } else if (node instanceof Quoted quoted) {
+                return Math.max(quoted.text().length(), 1);
+            }
+            return 1;
+        }
+
+        /**
+         * {@return the estimated size of an alternation}
+         *
+         * @param topLevel whether the alternation is the root of the pattern, in which case wildcards are only counted in the branches that are not anchored
+         */
+        private long alternation(Alternation alternation, boolean topLevel) {
+            long size = alternation.branches().size() - 1; // Every branch needs a split
+            for (final Node branch : alternation.branches()) {
+                if (topLevel) {
+                    countWildcards = !anchored(branch);
+                }
+                size = saturate(size + size(branch));
+            }
+            widestAlternation = Math.max(widestAlternation, alternation.branches().size());
+            return size;
+        }
+
+        /**
+         * {@return the estimated size of a repetition, which re2j expands into copies of its atom}
+         */
+        private long repeat(Repeat repeat) {
+            final long size = size(repeat.atom());
+            final int min = Math.min(repeat.min(), MAX_REPEAT);
+            if (repeat.unbounded()) {
+                if (countWildcards && isWildcard(repeat.atom())) wildcards++;
+                // {n,} is n - 1 copies followed by a plus, and * and + are a single copy with a split
+                return saturate(size * Math.max(min, 1) + 1);
+            }
+            final int max = Math.min(repeat.max(), MAX_REPEAT);
+            // Every optional copy needs a split
+            return saturate(size * Math.max(max, 1) + (max - min));
+        }
+
+        private static boolean isWildcard(Node atom) {
+            return atom instanceof AnyCharacter
+                    || (atom instanceof CharacterClass characterClass && characterClass.negated())
+                    || (atom instanceof Escape escape && (escape.name() == 'S' || escape.name() == 'W' || escape.name() == 'D'));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package uk.gemwire.camelot.pings;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMaps;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+import uk.gemwire.camelot.configuration.Config;
+import uk.gemwire.camelot.db.schemas.Ping;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Keeps track of how much time is spent matching each {@link Ping custom ping}.
+ * <p>Each ping gets a {@link Meter} that records the cumulative time spent matching it, how many times it was matched,
+ * and a histogram used to estimate the 99th percentile of its match time.
+ * Pings whose p99 exceeds the {@link Config#PINGS_MATCH_BUDGET configured budget} are quarantined: their meter stops matching them,
+ * and the quarantine handler is notified so that they can be removed.</p>
+ */
+public final class PingCosts {
+    /**
+     * The minimum amount of times a ping has to be matched before it can be quarantined, so that a few slow outliers
+     * (like the first match, before the JIT kicks in) do not quarantine a ping.
+     */
+    public static final int MIN_SAMPLES = 100;
+
+    /**
+     * The amount of histogram buckets. Bucket {@code i} counts the matches that took less than {@code 2^i} nanoseconds.
+     */
+    private static final int BUCKETS = 64;
+
+    private final Int2ObjectMap<Meter> meters = Int2ObjectMaps.synchronize(new Int2ObjectOpenHashMap<>());
+    private final Consumer<Meter> quarantineHandler;
+
+    /**
+     * @param quarantineHandler a handler called, once, with the meter of every ping that is quarantined
+     */
+    public PingCosts(Consumer<Meter> quarantineHandler) {
+        this.quarantineHandler = quarantineHandler;
+    }
+
+    /**
+     * {@return the meter of the given {@code ping}, creating it if it does not exist}
+     */
+    public Meter meter(Ping ping) {
+        synchronized (meters) {
+            final Meter existing = meters.get(ping.id());
+            // The ping may have been recreated with the same ID, in which case the old costs are meaningless
+            if (existing != null && existing.ping.regex().pattern().equals(ping.regex().pattern())) {
+                return existing;
+            }
+            final Meter meter = new Meter(ping);
+            meters.put(ping.id(), meter);
+            return meter;
+        }
+    }
+
+    /**
+     * {@return the meter of the ping with the given {@code id}, or {@code null} if the ping was never matched}
+     */
+    @Nullable
+    public Meter getMeter(int id) {
+        return meters.get(id);
+    }
+
+    /**
+     * Forget the costs of the ping with the given {@code id}, as it was deleted.
+     */
+    public void forget(int id) {
+        meters.remove(id);
+    }
+
+    /**
+     * The costs of a ping.
+     */
+    public final class Meter {
+        private final Ping ping;
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder invocations = new LongAdder();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        private final AtomicBoolean quarantined = new AtomicBoolean();
+
+        private Meter(Ping ping) {
+            this.ping = ping;
+        }
+
+        /**
+         * Checks if the pattern of the ping can be found in the given {@code content}, recording the time it took.
+         *
+         * @param content the content to match
+         * @return if the ping was found, or {@code false} if the ping is quarantined
+         */
+        public boolean find(CharSequence content) {
+            if (quarantined.get()) return false;
+            final long start = System.nanoTime();
+            final boolean found = ping.regex().matcher(content).find();
+            record(System.nanoTime() - start);
+            return found;
+        }
+
+        private void record(long nanos) {
+            totalNanos.add(nanos);
+            invocations.increment();
+            histogram.incrementAndGet(Math.min(BUCKETS - Long.numberOfLeadingZeros(nanos), BUCKETS - 1));
+
+            final long budget = Config.PINGS_MATCH_BUDGET * 1000L;
+            if (budget <= 0) return;
+            final long count = invocations.sum();
+            // Computing the percentile walks the histogram, so only do it every 64 invocations
+            // The estimate is an upper bound, so only quarantine if even its lower bound is over the budget
+            if ((count & 63) == 0 && count >= MIN_SAMPLES && p99Nanos() / 2 > budget && quarantined.compareAndSet(false, true)) {
+                quarantineHandler.accept(this);
+            }
+        }
+
+        /**
+         * {@return the ping this meter measures}
+         */
+        public Ping ping() {
+            return ping;
+        }
+
+        /**
+         * {@return the cumulative amount of nanoseconds spent matching the ping}
+         */
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * {@return how many times the ping was matched}
+         */
+        public long invocations() {
+            return invocations.sum();
+        }
+
+        /**
+         * {@return if the ping was quarantined}
+         */
+        public boolean isQuarantined() {
+            return quarantined.get();
+        }
+
+        /**
+         * {@return an estimate of the 99th percentile of the time it takes to match the ping, in nanoseconds}
+         * <p>The estimate is the upper bound of the histogram bucket containing the percentile, so it may overestimate the real value by up to 2 times.</p>
+         */
+        public long p99Nanos() {
+            long total = 0;
+            final long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram.get(i);
+                total += counts[i];
+            }
+            if (total == 0) return 0;
+
+            // The amount of samples slower than the p99
+            long remaining = total / 100;
+            for (int i = BUCKETS - 1; i > 0; i--) {
+                remaining -= counts[i];
+                if (remaining < 0) {
+                    return 1L << Math.min(i, 62);
+                }
+            }
+            return 1;
+        }
+    }
+}
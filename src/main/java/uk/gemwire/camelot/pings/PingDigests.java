@@ -0,0 +1,246 @@
+package uk.gemwire.camelot.pings;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.emoji.Emoji;
+import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
+import net.dv8tion.jda.api.interactions.components.ActionRow;
+import net.dv8tion.jda.api.interactions.components.ItemComponent;
+import net.dv8tion.jda.api.interactions.components.buttons.Button;
+import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
+import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+import org.jetbrains.annotations.Nullable;
+import uk.gemwire.camelot.Database;
+import uk.gemwire.camelot.configuration.Config;
+import uk.gemwire.camelot.db.schemas.DigestEntry;
+import uk.gemwire.camelot.db.schemas.Ping;
+import uk.gemwire.camelot.db.transactionals.PingDigestsDAO;
+import uk.gemwire.camelot.util.Utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Manages the digests of the users that opted into receiving their custom pings periodically, instead of one notification per message.
+ * <p>The messages that trigger the pings of those users are buffered in the database, so that they survive restarts,
+ * and are flushed as a single paginated message once the oldest one is {@link Config#PINGS_DIGEST_INTERVAL old enough},
+ * or once {@link Config#PINGS_DIGEST_SIZE enough of them} are buffered.</p>
+ * <p>Sent digests are kept in the database for {@link #SENT_RETENTION a while}, so that their page buttons keep working
+ * without any in-memory state. The buttons are handled by the {@link uk.gemwire.camelot.listener.PingDigestListener}.</p>
+ */
+public final class PingDigests {
+    /**
+     * The amount of buffered messages displayed on a page of a digest.
+     */
+    public static final int ENTRIES_PER_PAGE = 5;
+
+    /**
+     * The maximum length of the content of a buffered message.
+     */
+    public static final int CONTENT_LENGTH = 500;
+
+    /**
+     * How long sent digests are kept, and can be paginated, for.
+     */
+    public static final Duration SENT_RETENTION = Duration.ofDays(30);
+
+    /**
+     * The prefix of the IDs of the page buttons of digests. The IDs are in the format {@code ping-digest/<digest>/<page>/<prev|next>}.
+     */
+    public static final String BUTTON_PREFIX = "ping-digest";
+
+    private final LongSet users = LongSets.synchronize(new LongOpenHashSet());
+    private final LongSet flushing = LongSets.synchronize(new LongOpenHashSet());
+
+    /**
+     * Loads the users that receive digests from the database.
+     */
+    public void load() {
+        final List<Long> fromDb = Database.pings().withExtension(PingDigestsDAO.class, PingDigestsDAO::getDigestUsers);
+        synchronized (users) {
+            users.clear();
+            users.addAll(fromDb);
+        }
+    }
+
+    /**
+     * {@return if the {@code user} receives their pings as digests}
+     */
+    public boolean isEnabled(long user) {
+        return users.contains(user);
+    }
+
+    /**
+     * Sets whether the {@code user} receives their pings as digests, writing it to the database too.
+     */
+    public void setEnabled(long user, boolean enabled) {
+        if (enabled) {
+            users.add(user);
+            Database.pings().useExtension(PingDigestsDAO.class, db -> db.enable(user));
+        } else {
+            users.remove(user);
+            Database.pings().useExtension(PingDigestsDAO.class, db -> db.disable(user));
+        }
+    }
+
+    /**
+     * Buffers the {@code message} that triggered the {@code pings} of the {@code user} for their next digest.
+     *
+     * @return the amount of messages buffered for the user, including this one
+     */
+    public int add(long user, Message message, List<Ping> pings) {
+        return Database.pings().inTransaction(handle -> {
+            final PingDigestsDAO db = handle.attach(PingDigestsDAO.class);
+            db.insert(
+                    user, message.getGuild().getIdLong(),
+                    message.getAuthor().getName(), message.getJumpUrl(),
+                    Utils.truncate(message.getContentRaw(), CONTENT_LENGTH),
+                    pings.stream().map(Ping::message).collect(Collectors.joining(" | ")),
+                    message.getTimeCreated().toInstant().toEpochMilli()
+            );
+            return db.count(user);
+        });
+    }
+
+    /**
+     * {@return the users whose oldest buffered message is older than the {@link Config#PINGS_DIGEST_INTERVAL digest interval}}
+     */
+    public List<Long> getDue() {
+        final long before = System.currentTimeMillis() - Config.PINGS_DIGEST_INTERVAL * 60_000L;
+        return Database.pings().withExtension(PingDigestsDAO.class, db -> db.getUsersWithEntriesBefore(before));
+    }
+
+    /**
+     * Deletes the sent digests that are older than the {@link #SENT_RETENTION retention period}.
+     */
+    public void pruneSent() {
+        final long before = System.currentTimeMillis() - SENT_RETENTION.toMillis();
+        Database.pings().useExtension(PingDigestsDAO.class, db -> db.deleteDigestsBefore(before));
+    }
+
+    /**
+     * Starts flushing the digest of the {@code user}, marking the buffered messages as sent in the digest.
+     * The flush must be {@link #finishFlush(long, int, boolean) finished} before the digest of the user can be flushed again.
+     *
+     * @return the buffered messages of the user, or {@code null} if there are none or if the digest is already being flushed.
+     * The ID of the digest is the ID of the last message
+     */
+    @Nullable
+    public List<DigestEntry> startFlush(long user) {
+        if (!flushing.add(user)) return null;
+        final List<DigestEntry> entries = Database.pings().inTransaction(handle -> {
+            final PingDigestsDAO db = handle.attach(PingDigestsDAO.class);
+            final List<DigestEntry> buffered = db.getEntries(user);
+            if (!buffered.isEmpty()) {
+                db.markSent(user, buffered.get(buffered.size() - 1).id());
+            }
+            return buffered;
+        });
+        if (entries.isEmpty()) {
+            flushing.remove(user);
+            return null;
+        }
+        return entries;
+    }
+
+    /**
+     * Finishes flushing the digest of the {@code user}.
+     *
+     * @param digest the ID of the digest
+     * @param sent   whether the digest was sent. If it was not, its messages are buffered again
+     */
+    public void finishFlush(long user, int digest, boolean sent) {
+        if (!sent) {
+            Database.pings().useExtension(PingDigestsDAO.class, db -> db.unmarkSent(digest));
+        }
+        flushing.remove(user);
+    }
+
+    /**
+     * Creates the message of a digest, displaying its first page.
+     *
+     * @param digest  the ID of the digest
+     * @param entries the messages of the digest
+     * @return the message
+     */
+    public static MessageCreateData createMessage(int digest, List<DigestEntry> entries) {
+        final MessageCreateBuilder builder = new MessageCreateBuilder()
+                .setEmbeds(createPage(entries, 0));
+        final List<ItemComponent> buttons = createButtons(digest, 0, entries.size());
+        if (!buttons.isEmpty()) {
+            builder.setComponents(ActionRow.of(buttons));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Handle a page change of a digest message, loading the digest from the database.
+     *
+     * @param event the event that triggered the interaction, whose button ID starts with the {@link #BUTTON_PREFIX prefix}
+     */
+    public static void onButton(ButtonInteractionEvent event) {
+        final String[] split = event.getComponentId().split("/");
+        final int digest;
+        final int page;
+        try {
+            digest = Integer.parseInt(split[1]);
+            page = Integer.parseInt(split[2]) + (split[3].equals("prev") ? -1 : 1);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException exception) {
+            return;
+        }
+
+        final List<DigestEntry> entries = Database.pings().withExtension(PingDigestsDAO.class, db -> db.getDigest(digest));
+        if (entries.isEmpty() || entries.get(0).user() != event.getUser().getIdLong()) {
+            event.reply("This digest is not available anymore.").setEphemeral(true).queue();
+            return;
+        }
+        if (page < 0 || page >= pageAmount(entries.size())) {
+            event.deferEdit().queue();
+            return;
+        }
+
+        final List<ItemComponent> buttons = createButtons(digest, page, entries.size());
+        event.editMessageEmbeds(createPage(entries, page))
+                .setComponents(buttons.isEmpty() ? List.of() : List.of(ActionRow.of(buttons)))
+                .queue();
+    }
+
+    private static MessageEmbed createPage(List<DigestEntry> entries, int page) {
+        final EmbedBuilder builder = new EmbedBuilder()
+                .setTitle("Custom pings digest")
+                .setDescription("%s messages triggered your custom pings.".formatted(entries.size()))
+                .setFooter("Page " + (page + 1) + " of " + pageAmount(entries.size()));
+        for (final DigestEntry entry : entries.subList(page * ENTRIES_PER_PAGE, Math.min(entries.size(), (page + 1) * ENTRIES_PER_PAGE))) {
+            builder.addField(
+                    Utils.truncate(entry.pings(), MessageEmbed.TITLE_MAX_LENGTH),
+                    Utils.truncate("**%s** <t:%s:R>: %s\n[Jump](%s)".formatted(
+                            entry.author(), entry.timestamp() / 1000, entry.content().isBlank() ? "[Blank]" : entry.content(), entry.url()
+                    ), MessageEmbed.VALUE_MAX_LENGTH),
+                    false
+            );
+        }
+        return builder.build();
+    }
+
+    private static int pageAmount(int entryAmount) {
+        return (entryAmount + ENTRIES_PER_PAGE - 1) / ENTRIES_PER_PAGE;
+    }
+
+    private static List<ItemComponent> createButtons(int digest, int page, int entryAmount) {
+        final String id = BUTTON_PREFIX + "/" + digest;
+        final List<ItemComponent> components = new ArrayList<>();
+        if (page != 0) {
+            components.add(Button.secondary(id + "/" + page + "/prev", Emoji.fromUnicode("◀️")));
+        }
+        if ((page + 1) * ENTRIES_PER_PAGE < entryAmount) {
+            components.add(Button.primary(id + "/" + page + "/next", Emoji.fromUnicode("▶️")));
+        }
+        return components;
+    }
+}
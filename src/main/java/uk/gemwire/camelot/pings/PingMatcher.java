@@ -0,0 +1,83 @@
+package uk.gemwire.camelot.pings;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import uk.gemwire.camelot.BotMain;
+import uk.gemwire.camelot.configuration.Config;
+import uk.gemwire.camelot.db.schemas.Ping;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A matcher compiled from all the {@link Ping custom pings} of a guild, used to determine which pings a message triggers.
+ *
+ * @see CombinedPingMatcher
+ * @see LinearPingMatcher
+ */
+public interface PingMatcher {
+    /**
+     * An empty matcher, for guilds without pings.
+     */
+    PingMatcher EMPTY = new LinearPingMatcher(List.of());
+
+    /**
+     * Match the given {@code content} against the pings of this matcher.
+     *
+     * @param content the content to match
+     * @return the pings that the content triggered, in the order they were given to the matcher
+     */
+    List<Ping> match(CharSequence content);
+
+    /**
+     * Match the given {@code content} against the pings of this matcher, grouping the triggered pings by their owner.
+     *
+     * @param content the content to match
+     * @return a map of user -> the pings of the user that the content triggered, in the order the users' first pings were given to the matcher
+     */
+    default Long2ObjectMap<List<Ping>> matchByUser(CharSequence content) {
+        final List<Ping> matched = match(content);
+        if (matched.isEmpty()) return Long2ObjectMaps.emptyMap();
+        final Long2ObjectMap<List<Ping>> byUser = new Long2ObjectLinkedOpenHashMap<>();
+        for (final Ping ping : matched) {
+            byUser.computeIfAbsent(ping.user(), k -> new ArrayList<>(1)).add(ping);
+        }
+        return byUser;
+    }
+
+    /**
+     * {@return the pings this matcher checks}
+     */
+    List<Ping> pings();
+
+    /**
+     * {@return the amount of compiled patterns this matcher holds}
+     * This is at least the amount of {@link #pings() pings}, plus any pattern the matcher compiled out of them.
+     */
+    default int compiledPatterns() {
+        return pings().size();
+    }
+
+    /**
+     * Creates a matcher for the given {@code pings}.
+     * <p>If {@link Config#COMBINED_PINGS_MATCHING combined matching} is enabled, a {@link CombinedPingMatcher} will be created,
+     * otherwise, or if the combined patterns cannot be compiled, a {@link LinearPingMatcher} is used.</p>
+     *
+     * @param pings the pings to create the matcher for
+     * @param costs the costs tracker used to measure the pings
+     * @return the matcher
+     */
+    static PingMatcher create(List<Ping> pings, PingCosts costs) {
+        if (pings.isEmpty()) return EMPTY;
+        final List<PingCosts.Meter> meters = pings.stream().map(costs::meter).toList();
+        if (Config.COMBINED_PINGS_MATCHING) {
+            try {
+                return new CombinedPingMatcher(meters);
+            } catch (Exception exception) {
+                BotMain.LOGGER.error("Could not compile combined ping matcher, falling back to linear matching: ", exception);
+            }
+        }
+        return new LinearPingMatcher(meters);
+    }
+}
@@ -0,0 +1,79 @@
+package uk.gemwire.camelot.pings;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMaps;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import uk.gemwire.camelot.Database;
+import uk.gemwire.camelot.db.transactionals.PingsDAO;
+
+import java.time.Duration;
+
+/**
+ * A cache of the private threads in which custom ping notifications are sent to users that do not accept DMs.
+ * <p>The threads are kept in memory and written through to the database, so resolving the thread of a user never queries the database.</p>
+ * <p>This cache also remembers, for {@link #CLOSED_DMS_DURATION a while}, the users whose DMs are known to be closed,
+ * so that their notifications can go straight to their thread instead of failing to open a DM first.</p>
+ */
+public final class PingThreadCache {
+    /**
+     * How long to remember that a user's DMs are closed for, after which sending them a DM will be attempted again.
+     */
+    public static final Duration CLOSED_DMS_DURATION = Duration.ofHours(1);
+
+    private final Long2LongMap threads;
+    private final Cache<Long, Boolean> closedDms = Caffeine.newBuilder()
+            .expireAfterWrite(CLOSED_DMS_DURATION)
+            .maximumSize(10_000)
+            .build();
+
+    public PingThreadCache() {
+        final Long2LongOpenHashMap map = new Long2LongOpenHashMap();
+        map.defaultReturnValue(0L);
+        this.threads = Long2LongMaps.synchronize(map);
+    }
+
+    /**
+     * Loads all known ping threads from the database, replacing the cached ones.
+     */
+    public void load() {
+        final Long2LongMap fromDb = Database.pings().withExtension(PingsDAO.class, PingsDAO::getAllThreads);
+        synchronized (threads) {
+            threads.clear();
+            threads.putAll(fromDb);
+        }
+    }
+
+    /**
+     * {@return the ID of the ping thread of the {@code user}, or {@code 0} if the user does not have one}
+     */
+    public long getThread(long user) {
+        return threads.get(user);
+    }
+
+    /**
+     * Sets the ping thread of the {@code user}, writing it to the database too.
+     *
+     * @param user   the user the thread is for
+     * @param thread the ID of the thread
+     */
+    public void setThread(long user, long thread) {
+        threads.put(user, thread);
+        Database.pings().useExtension(PingsDAO.class, db -> db.insertThread(user, thread));
+    }
+
+    /**
+     * {@return if the {@code user} was recently found to not accept DMs}
+     */
+    public boolean hasClosedDms(long user) {
+        return closedDms.getIfPresent(user) != null;
+    }
+
+    /**
+     * Remember that the {@code user} does not accept DMs, for the next {@linkplain #CLOSED_DMS_DURATION hour}.
+     */
+    public void markClosedDms(long user) {
+        closedDms.put(user, Boolean.TRUE);
+    }
+}
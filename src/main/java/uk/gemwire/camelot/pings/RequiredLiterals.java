@@ -0,0 +1,150 @@
+package uk.gemwire.camelot.pings;
+
+import com.google.re2j.Pattern;
+import org.jetbrains.annotations.Nullable;
+import uk.gemwire.camelot.pings.PatternSyntax.Alternation;
+import uk.gemwire.camelot.pings.PatternSyntax.Concatenation;
+import uk.gemwire.camelot.pings.PatternSyntax.Group;
+import uk.gemwire.camelot.pings.PatternSyntax.Literal;
+import uk.gemwire.camelot.pings.PatternSyntax.Node;
+import uk.gemwire.camelot.pings.PatternSyntax.Repeat;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Extracts the literals that any match of a {@link Pattern} must contain.
+ * <p>The result of the analysis is a set of literals, at least one of which is contained by any match of the pattern.
+ * For instance, {@code \bfoo(bar|baz)?\b} requires {@code foo}, and {@code (hello|hi) there} requires either {@code hello} or {@code hi there}.</p>
+ * <p>The analysis is conservative: literals are only extracted from printable ASCII characters, and they are lower-cased,
+ * so that they can be looked up in a {@link #normalize(CharSequence) normalized} message regardless of the case sensitivity of the pattern.
+ * If no literal of at least {@value #MIN_LENGTH} characters can be extracted, the pattern has no required literals and must always be checked.</p>
+ */
+public final class RequiredLiterals {
+    /**
+     * The minimum length of a literal to be worth using. Shorter literals are found in almost any message.
+     */
+    public static final int MIN_LENGTH = 3;
+
+    private RequiredLiterals() {
+    }
+
+    /**
+     * Extracts the literals required by the given {@code pattern}.
+     *
+     * @param pattern the pattern to analyse
+     * @return the literals, at least one of which any match must contain, or {@code null} if no literal could be extracted
+     */
+    @Nullable
+    public static Set<String> extract(Pattern pattern) {
+        try {
+            return literals(PatternSyntax.parse(pattern.pattern()));
+        } catch (RuntimeException ex) {
+            // The analysis is best-effort, and a pattern we can't understand is just always checked
+            return null;
+        }
+    }
+
+    /**
+     * Normalizes the given {@code content} so that literals may be searched in it.
+     * <p>ASCII letters are lower-cased, and the two non-ASCII characters that case-fold to ASCII letters
+     * (the long s and the Kelvin sign) are replaced with the letter they fold to.</p>
+     */
+    public static String normalize(CharSequence content) {
+        final char[] chars = new char[content.length()];
+        for (int i = 0; i < chars.length; i++) {
+            final char ch = content.charAt(i);
+            if (ch >= 'A' && ch <= 'Z') {
+                chars[i] = (char) (ch + ('a' - 'A'));
+            } else if (ch == '\u017F') { // Long s
+                chars[i] = 's';
+            } else if (ch == '\u212A') { // Kelvin sign
+                chars[i] = 'k';
+            } else {
+                chars[i] = ch;
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * {@return the literals required by the given alternation, concatenation or group {@code node}, or {@code null} if there are none}
+     */
+    @Nullable
+    private static Set<String> literals(Node node) {
+        if (node instanceof Alternation alternation) {
+            final Set<String> literals = new HashSet<>();
+            for (final Node branch : alternation.branches()) {
+                final Set<String> branchLiterals = literals(branch);
+                if (branchLiterals == null) return null;
+                literals.addAll(branchLiterals);
+            }
+            return literals;
+        } else if (node instanceof Concatenation concatenation) {
+            return concatenation(concatenation);
+        } else if (node instanceof Group group) {
+            return literals(group.body());
+        }
+        return null;
+    }
+
+    /**
+     * {@return the best set of literals required by one of the elements of the {@code concatenation}}
+     */
+    @Nullable
+    private static Set<String> concatenation(Concatenation concatenation) {
+        final Best best = new Best();
+        final StringBuilder run = new StringBuilder();
+        for (final Node item : concatenation.items()) {
+            final Node atom = item instanceof Repeat repeat ? repeat.atom() : item;
+            final boolean optional = item instanceof Repeat repeat && repeat.min() == 0;
+
+            if (atom instanceof Literal literal && literal.character() >= ' ' && literal.character() <= '~') {
+                if (optional) {
+                    best.flush(run);
+                } else if (item instanceof Repeat) {
+                    // Repeated at least once, so the character is required but what comes after is not necessarily next to it
+                    run.append(Character.toLowerCase((char) literal.character()));
+                    best.flush(run);
+                } else {
+                    run.append(Character.toLowerCase((char) literal.character()));
+                }
+            } else {
+                // Only use printable ASCII characters, as other characters may have complex case folding rules
+                best.flush(run);
+                if (atom instanceof Group group && !optional) {
+                    best.offer(literals(group.body()));
+                }
+            }
+        }
+        best.flush(run);
+        return best.literals;
+    }
+
+    /**
+     * The best set of literals of a concatenation, being the set whose shortest literal is the longest.
+     */
+    private static final class Best {
+        @Nullable
+        private Set<String> literals;
+        private int score;
+
+        void flush(StringBuilder run) {
+            if (!run.isEmpty()) {
+                final Set<String> set = new HashSet<>();
+                set.add(run.toString());
+                offer(set);
+                run.setLength(0);
+            }
+        }
+
+        void offer(@Nullable Set<String> candidate) {
+            if (candidate == null || candidate.isEmpty()) return;
+            final int candidateScore = candidate.stream().mapToInt(String::length).min().orElse(0);
+            if (candidateScore >= MIN_LENGTH && candidateScore > score) {
+                literals = candidate;
+                score = candidateScore;
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package uk.gemwire.camelot.script;
+
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+import org.jetbrains.annotations.Nullable;
+import uk.gemwire.camelot.BotMain;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A reply consumer that buffers the output of a script and sends it asynchronously through the {@code target} function,
+ * so that neither scripts nor any other thread wait for messages to be sent.
+ * <p>As each reply of a script replaces the previous one, only the latest reply is buffered. While the script runs, the buffer
+ * is sent at most once every {@link #INTERVAL}, and once it is {@link #flush() flushed} at the end of the execution,
+ * replies are sent as soon as the previous one has been sent. Replies are never sent concurrently, so they are sent in order:
+ * the next pending reply is only sent once the request of the previous one completed.</p>
+ */
+public final class BufferedReply implements Consumer<MessageCreateData> {
+    /**
+     * The minimum interval between two sends while the script runs.
+     */
+    public static final Duration INTERVAL = Duration.ofSeconds(1);
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "Script replies");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Function<MessageCreateData, RestAction<?>> target;
+
+    @Nullable
+    private MessageCreateData pending;
+    @Nullable
+    private ScheduledFuture<?> scheduled;
+    private boolean sending;
+    private boolean flushed;
+
+    /**
+     * @param target the function creating the action sending a reply, which is {@linkplain RestAction#queue() queued}
+     */
+    public BufferedReply(Function<MessageCreateData, RestAction<?>> target) {
+        this.target = target;
+    }
+
+    @Override
+    public synchronized void accept(MessageCreateData data) {
+        pending = data;
+        if (!sending && scheduled == null) {
+            if (flushed) {
+                startSend();
+            } else {
+                scheduled = EXECUTOR.schedule(this::sendScheduled, INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Sends the buffered reply now, and every subsequent reply as soon as possible.
+     * This is called once the script finished executing.
+     */
+    public synchronized void flush() {
+        flushed = true;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+        if (!sending && pending != null) {
+            startSend();
+        }
+    }
+
+    private synchronized void sendScheduled() {
+        // A cancelled send may still run, in which case the reply is already being sent
+        if (sending) return;
+        scheduled = null;
+        if (pending != null) {
+            startSend();
+        }
+    }
+
+    private void startSend() {
+        final MessageCreateData data = pending;
+        pending = null;
+        sending = true;
+        try {
+            target.apply(data).queue(success -> sent(), failure -> {
+                BotMain.LOGGER.error("Could not send script reply: ", failure);
+                sent();
+            });
+        } catch (Exception exception) {
+            BotMain.LOGGER.error("Could not send script reply: ", exception);
+            EXECUTOR.execute(this::sent);
+        }
+    }
+
+    /**
+     * Called once a reply was sent, starting the next send if a reply is pending.
+     */
+    private synchronized void sent() {
+        sending = false;
+        if (pending != null) {
+            if (flushed) {
+                startSend();
+            } else {
+                scheduled = EXECUTOR.schedule(this::sendScheduled, INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package uk.gemwire.camelot.script;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.api.events.guild.update.GenericGuildUpdateEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+
+/**
+ * A cache of the {@link ScriptContext#createGuild(Guild) script objects} of guilds, so that they are not rebuilt for every execution.
+ * <p>The cached objects are {@link ScriptObject#freeze() read-only}, as they are shared by the executions in the guild.
+ * They are invalidated when the guild is updated, and evicted when they have not been used for {@link #EXPIRY a while}.</p>
+ */
+public final class GuildScriptObjects implements EventListener {
+    /**
+     * How long the object of a guild in which no script accessed it is kept for.
+     */
+    public static final Duration EXPIRY = Duration.ofHours(1);
+
+    private final Cache<Long, ScriptObject> guilds = Caffeine.newBuilder()
+            .expireAfterAccess(EXPIRY)
+            .build();
+
+    /**
+     * {@return the script object of the given {@code guild}}
+     */
+    public ScriptObject get(Guild guild) {
+        return guilds.get(guild.getIdLong(), k -> new ScriptContext(guild.getJDA(), guild, null, null, null).createGuild(guild).freeze());
+    }
+
+    @Override
+    public void onEvent(@NotNull GenericEvent gevent) {
+        if (gevent instanceof GenericGuildUpdateEvent<?> event) {
+            guilds.invalidate(event.getGuild().getIdLong());
+        } else if (gevent instanceof GuildLeaveEvent event) {
+            guilds.invalidate(event.getGuild().getIdLong());
+        }
+    }
+}
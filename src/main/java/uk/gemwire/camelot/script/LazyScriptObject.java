@@ -0,0 +1,56 @@
+package uk.gemwire.camelot.script;
+
+import com.google.common.base.Suppliers;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import java.util.function.Supplier;
+
+/**
+ * A {@link ProxyObject} whose members are only built when a script first accesses them.
+ * <p>This is used for the objects of the script context, which most scripts never use, so that they do not have to be built for every execution.</p>
+ */
+public final class LazyScriptObject implements ProxyObject {
+    private final Supplier<? extends ProxyObject> delegate;
+
+    private LazyScriptObject(Supplier<? extends ProxyObject> delegate) {
+        this.delegate = Suppliers.memoize(delegate::get);
+    }
+
+    /**
+     * {@return an object that is built by the given {@code factory} when first accessed}
+     */
+    public static LazyScriptObject of(Supplier<? extends ProxyObject> factory) {
+        return new LazyScriptObject(factory);
+    }
+
+    @Override
+    public Object getMember(String key) {
+        return delegate.get().getMember(key);
+    }
+
+    @Override
+    public Object getMemberKeys() {
+        return delegate.get().getMemberKeys();
+    }
+
+    @Override
+    public boolean hasMember(String key) {
+        return delegate.get().hasMember(key);
+    }
+
+    @Override
+    public void putMember(String key, Value value) {
+        delegate.get().putMember(key, value);
+    }
+
+    @Override
+    public boolean removeMember(String key) {
+        return delegate.get().removeMember(key);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.get().toString();
+    }
+}
@@ -31,6 +31,11 @@ public record ScriptContext(
 ) {
     private static final Map<Class<?>, ScriptTransformer<?>> TRANSFORMERS = new HashMap<>();
 
+    /**
+     * The cache of the script objects of guilds.
+     */
+    public static final GuildScriptObjects GUILDS = new GuildScriptObjects();
+
     /**
      * Transforms the given object to one which may be given to a script execution.
      *
@@ -61,7 +66,7 @@ public record ScriptContext(
             } else if (obj instanceof Role) {
                 return cast(ScriptContext::createRole);
             } else if (obj instanceof Guild) {
-                return cast(ScriptContext::createGuild);
+                return cast((ScriptContext context, Guild guild) -> GUILDS.get(guild));
             } else if (obj instanceof JDA) {
                 return cast(ScriptContext::createJDA);
             } else if (obj instanceof List<?>) {
@@ -74,17 +79,19 @@ public record ScriptContext(
 
     /**
      * Compiles this context into a {@link ScriptObject} containing the full context.
+     * <p>The objects of the context are {@link LazyScriptObject lazy}, so they are only built if the script uses them,
+     * and the object of the guild is {@link GuildScriptObjects cached}.</p>
      *
      * @return the script object
      */
     public ScriptObject compile() {
         return ScriptObject.of("Script")
                 // The context with which the script was executed
-                .put("guild", createGuild(guild))
-                .put("member", createMember(member))
-                .put("channel", createChannel(channel))
-                .put("user", createUser(member.getUser()))
-                .put("jda", createJDA(jda))
+                .put("guild", LazyScriptObject.of(() -> GUILDS.get(guild)))
+                .put("member", LazyScriptObject.of(() -> createMember(member)))
+                .put("channel", LazyScriptObject.of(() -> createChannel(channel)))
+                .put("user", LazyScriptObject.of(() -> createUser(member.getUser())))
+                .put("jda", LazyScriptObject.of(() -> createJDA(jda)))
 
                 // Methods used for replying
                 .putVoidMethod("reply", args -> reply.accept(MessageCreateData.fromContent(args.argString(0, true))))
@@ -109,7 +116,7 @@ public record ScriptContext(
 
     public ScriptObject createMember(Member member) {
         return ScriptObject.mentionable("Member", member)
-                .put("user", createUser(member.getUser()))
+                .put("user", LazyScriptObject.of(() -> createUser(member.getUser())))
                 .put("avatarUrl", member.getAvatarUrl())
                 .put("nickname", member.getNickname())
                 .putLazyGetter("getPermissions", () -> new ArrayList<>(member.getPermissions()))
@@ -134,7 +141,7 @@ public record ScriptContext(
     public ScriptObject createRole(Role role) {
         return ScriptObject.mentionable("Role", role)
                 .put("name", role.getName())
-                .putLazyGetter("getGuild", () -> createGuild(role.getGuild()));
+                .putLazyGetter("getGuild", () -> GUILDS.get(role.getGuild()));
     }
 
     public ScriptObject createJDA(JDA jda) {
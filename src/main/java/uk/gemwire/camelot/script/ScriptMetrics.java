@@ -0,0 +1,274 @@
+package uk.gemwire.camelot.script;
+
+import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Metrics of the script executions, kept per trick.
+ * <p>Each execution is split into {@link Phase phases} whose durations are recorded in {@link Histogram histograms},
+ * and the {@link Outcome outcome} of each execution is counted. Executions of scripts that are not tricks are recorded under {@value #NO_TRICK}.</p>
+ * <p>The metrics are only kept in memory, and may be polled through {@link #all()} by exporters.</p>
+ */
+public final class ScriptMetrics {
+    /**
+     * The key under which the executions of scripts that are not tricks are recorded.
+     */
+    public static final int NO_TRICK = -1;
+
+    private final Map<Integer, TrickMetrics> tricks = new ConcurrentHashMap<>();
+
+    /**
+     * Starts recording an execution.
+     *
+     * @param trick the ID of the executed trick, or {@link #NO_TRICK}
+     * @return the recorder of the execution, which starts in the {@link Phase#SETUP setup} phase
+     */
+    public Recorder start(int trick) {
+        return new Recorder(tricks.computeIfAbsent(trick, k -> new TrickMetrics()));
+    }
+
+    /**
+     * {@return the metrics of the trick with the given {@code id}, or {@code null} if it was never executed}
+     */
+    @Nullable
+    public TrickMetrics get(int id) {
+        return tricks.get(id);
+    }
+
+    /**
+     * Forgets the metrics of the trick with the given {@code id}, for instance because it was deleted.
+     */
+    public void remove(int id) {
+        tricks.remove(id);
+    }
+
+    /**
+     * {@return an unmodifiable view of the metrics of all executed tricks, by trick ID}
+     */
+    public Map<Integer, TrickMetrics> all() {
+        return Collections.unmodifiableMap(tricks);
+    }
+
+    /**
+     * The phases of an execution.
+     */
+    public enum Phase {
+        /**
+         * Creating a context and setting up its bindings.
+         */
+        SETUP,
+        /**
+         * Getting the source of the script and parsing it, without running any of its code.
+         */
+        PARSE,
+        /**
+         * Running the top-level code of the script, and then the {@code execute} function it exports.
+         */
+        RUN,
+        /**
+         * Replying. Replies made during the other phases are not counted towards them.
+         * <p>Replies of submitted executions are {@link BufferedReply buffered}, so this does not include the time taken to send them.</p>
+         */
+        REPLY
+    }
+
+    /**
+     * The outcomes of an execution.
+     */
+    public enum Outcome {
+        SUCCESS,
+        TIMEOUT,
+        EXCEPTION,
+        HELP
+    }
+
+    /**
+     * The metrics of a single trick.
+     */
+    public static final class TrickMetrics {
+        private final Map<Phase, Histogram> phases = new EnumMap<>(Phase.class);
+        private final Histogram total = new Histogram();
+        private final Map<Outcome, LongAdder> outcomes = new EnumMap<>(Outcome.class);
+
+        private TrickMetrics() {
+            for (final Phase phase : Phase.values()) {
+                phases.put(phase, new Histogram());
+            }
+            for (final Outcome outcome : Outcome.values()) {
+                outcomes.put(outcome, new LongAdder());
+            }
+        }
+
+        /**
+         * {@return the durations of the given {@code phase}}
+         */
+        public Histogram phase(Phase phase) {
+            return phases.get(phase);
+        }
+
+        /**
+         * {@return the total durations of the executions}
+         */
+        public Histogram total() {
+            return total;
+        }
+
+        /**
+         * {@return how many executions had the given {@code outcome}}
+         */
+        public long outcomes(Outcome outcome) {
+            return outcomes.get(outcome).sum();
+        }
+
+        /**
+         * {@return the amount of recorded executions}
+         */
+        public long executions() {
+            return total.count();
+        }
+    }
+
+    /**
+     * A histogram of durations, with buckets whose bounds are powers of two microseconds.
+     * <p>Recording is lock-free and the percentiles are approximated by the upper bound of their bucket.</p>
+     */
+    public static final class Histogram {
+        private static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Records a duration.
+         *
+         * @param nanos the duration, in nanoseconds
+         */
+        public void record(long nanos) {
+            final long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0);
+            buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1));
+            count.increment();
+            sum.add(micros);
+            max.accumulate(micros);
+        }
+
+        /**
+         * {@return the amount of recorded durations}
+         */
+        public long count() {
+            return count.sum();
+        }
+
+        /**
+         * {@return the sum of the recorded durations, in microseconds}
+         */
+        public long sum() {
+            return sum.sum();
+        }
+
+        /**
+         * {@return the longest recorded duration, in microseconds}
+         */
+        public long max() {
+            return max.get();
+        }
+
+        /**
+         * {@return the mean of the recorded durations, in microseconds}
+         */
+        public long mean() {
+            final long count = count();
+            return count == 0 ? 0 : sum() / count;
+        }
+
+        /**
+         * {@return an approximation of the given {@code percentile} of the recorded durations, in microseconds}
+         *
+         * @param percentile the percentile, between 0 and 1
+         */
+        public long percentile(double percentile) {
+            final long count = count();
+            if (count == 0) return 0;
+            final long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(i == 0 ? 0 : 1L << i, max());
+                }
+            }
+            return max();
+        }
+    }
+
+    /**
+     * Records the phases of an execution. A recorder must only be used by the thread running the execution.
+     */
+    public static final class Recorder {
+        private final TrickMetrics metrics;
+        private final long start = System.nanoTime();
+        private Phase phase = Phase.SETUP;
+        private long phaseStart = start;
+        private long phaseReplies;
+        private long replies;
+        private boolean finished;
+
+        private Recorder(TrickMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        /**
+         * Ends the current phase and starts the given {@code next} one.
+         */
+        public void next(Phase next) {
+            endPhase(System.nanoTime());
+            phase = next;
+        }
+
+        /**
+         * Wraps the given {@code reply} consumer so that the time spent replying is recorded in the {@link Phase#REPLY reply} phase.
+         */
+        public Consumer<MessageCreateData> timeReplies(Consumer<MessageCreateData> reply) {
+            return data -> {
+                final long replyStart = System.nanoTime();
+                try {
+                    reply.accept(data);
+                } finally {
+                    final long duration = System.nanoTime() - replyStart;
+                    replies += duration;
+                    phaseReplies += duration;
+                }
+            };
+        }
+
+        /**
+         * Ends the execution, recording its outcome. Further calls are ignored.
+         */
+        public void finish(Outcome outcome) {
+            if (finished) return;
+            finished = true;
+            final long end = System.nanoTime();
+            endPhase(end);
+            metrics.phase(Phase.REPLY).record(replies);
+            metrics.total().record(end - start);
+            metrics.outcomes.get(outcome).increment();
+        }
+
+        private void endPhase(long now) {
+            metrics.phase(phase).record(now - phaseStart - phaseReplies);
+            phaseStart = now;
+            phaseReplies = 0;
+        }
+    }
+}
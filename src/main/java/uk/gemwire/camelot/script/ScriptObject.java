@@ -19,6 +19,7 @@ import java.util.function.Supplier;
 public class ScriptObject implements ProxyObject {
     private final String name;
     private final Map<String, Object> values = new HashMap<>();
+    private boolean frozen;
 
     public ScriptObject(String name) {
         this.name = name;
@@ -76,8 +77,17 @@ public class ScriptObject implements ProxyObject {
         return put(key, (ProxyExecutable) args -> sup.get());
     }
 
+    /**
+     * Makes this object read-only for scripts, so that it may be shared between executions.
+     */
+    public ScriptObject freeze() {
+        this.frozen = true;
+        return this;
+    }
+
     @Override
     public void putMember(String key, Value value) {
+        checkNotFrozen();
         values.put(key, value.isHostObject() ? value.asHostObject() : value);
     }
 
@@ -115,6 +125,7 @@ public class ScriptObject implements ProxyObject {
 
     @Override
     public boolean removeMember(String key) {
+        checkNotFrozen();
         if (values.containsKey(key)) {
             values.remove(key);
             return true;
@@ -123,6 +134,12 @@ public class ScriptObject implements ProxyObject {
         }
     }
 
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException(name + " is read-only");
+        }
+    }
+
     /**
      * Transfers the values in this object to the given {@code bindings}.
      * @see Value#putMember(String, Object)
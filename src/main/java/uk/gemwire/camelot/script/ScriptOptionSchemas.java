@@ -0,0 +1,226 @@
+package uk.gemwire.camelot.script;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A cache of the option {@link Schema schemas} of tricks, so that the options a trick declares through {@link ScriptOptions}
+ * are only built once.
+ * <p>Scripts declare their options every time they run, so the schema of a trick is captured during its first run, and later runs
+ * {@link Capture#declare(Declaration.Key, Function) declare} their options against it: as long as a run declares the same options
+ * in the same order, the options of the schema are reused. A run declaring different options builds them again, and its schema replaces the cached one.</p>
+ * <p>Schemas are cached by trick ID and script content, and {@linkplain #invalidate(int) invalidated} when a trick is updated or deleted.
+ * The usage printed when help is requested is cached in the schema as well.</p>
+ */
+public final class ScriptOptionSchemas {
+    /**
+     * The maximum amount of schemas to cache.
+     */
+    public static final int MAX_SCHEMAS = ScriptSources.MAX_SOURCES;
+
+    private final Cache<Key, Schema> schemas = Caffeine.newBuilder()
+            .maximumSize(MAX_SCHEMAS)
+            .build();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Starts capturing the options declared by a run of a trick.
+     *
+     * @param trick  the ID of the trick, or {@link ScriptMetrics#NO_TRICK} if the script is not a trick
+     * @param script the script of the trick, or {@code null} if the script is not a trick
+     * @return the capture, declaring options against the cached schema of the trick, if any
+     */
+    public Capture capture(int trick, @Nullable String script) {
+        if (trick == ScriptMetrics.NO_TRICK || script == null) {
+            return new Capture(null, null);
+        }
+        final Schema cached = schemas.getIfPresent(new Key(trick, script.hashCode()));
+        return new Capture(script, cached != null && script.equals(cached.script) ? cached : null);
+    }
+
+    /**
+     * Caches the schema captured by a run of a trick, if it differs from the cached one.
+     *
+     * @param trick   the ID of the trick, or {@link ScriptMetrics#NO_TRICK} if the script is not a trick
+     * @param capture the capture of the run
+     */
+    public void store(int trick, Capture capture) {
+        if (trick == ScriptMetrics.NO_TRICK || capture.script == null) return;
+
+        final Schema schema = capture.finish();
+        if (schema == capture.cached) {
+            hits.increment();
+        } else {
+            misses.increment();
+            schemas.put(new Key(trick, capture.script.hashCode()), schema);
+        }
+    }
+
+    /**
+     * Invalidates the cached schemas of the trick with the given {@code id}.
+     */
+    public void invalidate(int trick) {
+        schemas.asMap().keySet().removeIf(key -> key.trick() == trick);
+    }
+
+    /**
+     * {@return how many runs reused a cached schema}
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * {@return how many runs had to capture a new schema}
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * {@return the amount of cached schemas}
+     */
+    public long size() {
+        return schemas.estimatedSize();
+    }
+
+    /**
+     * The options declared by a trick, in declaration order.
+     */
+    public static final class Schema {
+        @Nullable
+        private final String script;
+        private final List<Declaration> declarations;
+        @Nullable
+        private volatile String usage;
+
+        private Schema(@Nullable String script, List<Declaration> declarations) {
+            this.script = script;
+            this.declarations = declarations;
+        }
+
+        /**
+         * Gets the usage of the options of this schema, computing it if it is not cached yet.
+         *
+         * @param computer the function computing the usage
+         * @return the usage
+         */
+        public String usage(Supplier<String> computer) {
+            String usage = this.usage;
+            if (usage == null) {
+                usage = computer.get();
+                this.usage = usage;
+            }
+            return usage;
+        }
+    }
+
+    /**
+     * A declared option.
+     *
+     * @param key    the arguments the option was declared with
+     * @param option the option
+     */
+    public record Declaration(Key key, ScriptOptions.IOpt option) {
+        /**
+         * The arguments an option is declared with, which determine the option.
+         * Default values are not part of the key, as they do not affect the option itself.
+         *
+         * @param id          the names of a named option, or the index of a positional option
+         * @param type        the type of the option
+         * @param description the description of the option
+         * @param name        the name of a positional option
+         * @param required    whether the option is required
+         * @param hidden      whether the option is hidden
+         */
+        public record Key(Object id, @Nullable String type, @Nullable String description, @Nullable String name, @Nullable Boolean required, @Nullable Boolean hidden) {
+            /**
+             * Creates the key of an option declared with the given {@code config}.
+             *
+             * @param id     the names of a named option, or the index of a positional option
+             * @param config the configuration of the option
+             * @return the key
+             */
+            public static Key of(Object id, Map<String, ?> config) {
+                return new Key(
+                        id,
+                        (String) config.get("type"),
+                        (String) config.get("description"),
+                        (String) config.get("name"),
+                        (Boolean) config.get("required"),
+                        (Boolean) config.get("hidden")
+                );
+            }
+        }
+    }
+
+    /**
+     * Captures the options declared by a run. A capture must only be used by the thread running the execution.
+     */
+    public static final class Capture {
+        @Nullable
+        private final String script;
+        @Nullable
+        private final Schema cached;
+        private final List<Declaration> declared = new ArrayList<>();
+        private boolean matching;
+        @Nullable
+        private Schema schema;
+
+        private Capture(@Nullable String script, @Nullable Schema cached) {
+            this.script = script;
+            this.cached = cached;
+            this.matching = cached != null;
+        }
+
+        /**
+         * Declares an option, reusing the option of the cached schema if the previous options matched it.
+         *
+         * @param key     the arguments the option is declared with
+         * @param factory the function building the option, if it cannot be reused
+         * @return the option
+         */
+        @SuppressWarnings("unchecked")
+        public <T extends ScriptOptions.IOpt> T declare(Declaration.Key key, Function<Declaration.Key, T> factory) {
+            final int index = declared.size();
+            T option = null;
+            if (matching && index < cached.declarations.size()) {
+                final Declaration declaration = cached.declarations.get(index);
+                if (declaration.key().equals(key)) {
+                    option = (T) declaration.option();
+                }
+            }
+            if (option == null) {
+                matching = false;
+                option = factory.apply(key);
+            }
+            declared.add(new Declaration(key, option));
+            schema = null;
+            return option;
+        }
+
+        /**
+         * {@return the schema of the options declared so far}
+         * This is the cached schema if the run declared exactly the same options.
+         */
+        public Schema finish() {
+            if (schema == null) {
+                schema = matching && declared.size() == cached.declarations.size() ? cached : new Schema(script, List.copyOf(declared));
+            }
+            return schema;
+        }
+    }
+
+    private record Key(int trick, int hash) {
+    }
+}
@@ -29,41 +29,46 @@ import java.util.regex.Pattern;
 import static java.util.Objects.requireNonNullElse;
 
 @SuppressWarnings("ALL")
-public record ScriptOptions(List<String> args, CmdLineParser cmdLineParser, List<IOpt> order, Map<String, List<Object>> theArguments, ScriptContext context) {
+public record ScriptOptions(List<String> args, CmdLineParser cmdLineParser, List<IOpt> order, Map<String, List<Object>> theArguments, ScriptContext context, ScriptOptionSchemas.Capture schema) {
     public static final String[] EMPTY_STRING = new String[0];
 
+    /**
+     * The {@code --help} option, which every script has.
+     */
+    private static final Option HELP = new Option(
+            "--help",
+            EMPTY_STRING,
+            new CommonConfig(
+                    "Provides information about how to use the trick",
+                    "",
+                    false,
+                    true,
+                    new TypeInfo(Boolean.class, BooleanOptionHandler.class, false, "<bool>")
+            ),
+            true,
+            EMPTY_STRING,
+            EMPTY_STRING
+    );
+
     public ScriptOptions {
         final List<Object> helpOpt = new ArrayList<>();
         theArguments.put("help", helpOpt);
         cmdLineParser.addOption(new ListSetter(
                 context, helpOpt, Boolean.class, false
-        ), new Option(
-                "--help",
-                EMPTY_STRING,
-                new CommonConfig(
-                    "Provides information about how to use the trick",
-                 "",
-                 false,
-                        true,
-                        new TypeInfo(Boolean.class, BooleanOptionHandler.class, false, "<bool>")
-                ),
-                true,
-                EMPTY_STRING,
-                EMPTY_STRING
-        ));
+        ), HELP);
     }
 
     @HostAccess.Export
     public ScriptOptions optNamed(Object names, Map<String, ?> config) {
         final List<String> decidedNames = decideNames(names);
-        final Option option = new Option(
+        final Option option = schema.declare(ScriptOptionSchemas.Declaration.Key.of(decidedNames, config), key -> new Option(
             decidedNames.get(0),
             decidedNames.subList(1, decidedNames.size()).toArray(String[]::new),
             parseCfg(config, false, 0),
             false,
             EMPTY_STRING,
             EMPTY_STRING
-        );
+        ));
         order.add(option);
         final List<Object> args = createArgsList(config);
         theArguments.put(decidedNames.get(0), args);
@@ -81,9 +86,9 @@ public record ScriptOptions(List<String> args, CmdLineParser cmdLineParser, List
 
     @HostAccess.Export
     public ScriptOptions optPositional(int index, Map<String, ?> config) {
-        final Argument option = new Argument(
+        final Argument option = schema.declare(ScriptOptionSchemas.Declaration.Key.of(index, config), key -> new Argument(
             parseCfg(config, true, index), index
-        );
+        ));
         order.add(option);
         final List<Object> args = createArgsList(config);
         theArguments.put(option.name(), args);
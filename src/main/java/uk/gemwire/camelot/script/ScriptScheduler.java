@@ -0,0 +1,314 @@
+package uk.gemwire.camelot.script;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import org.jetbrains.annotations.Nullable;
+import uk.gemwire.camelot.BotMain;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A scheduler executing scripts on a fixed amount of worker threads, sharing them fairly between guilds and users.
+ * <p>Pending executions are queued per user, and the users with pending executions are queued per guild. Workers take executions
+ * round-robin, first between the guilds and then between the users of a guild, so a user submitting many scripts only delays their own scripts.</p>
+ * <p>The amount of queued executions is bounded both in total and per user, and {@link #submit(long, long, Runnable, Runnable) submissions}
+ * over these limits are rejected immediately. Timeouts are tracked by a separate timer thread, and only start once the execution starts,
+ * so that time spent in the queue does not count against a script.</p>
+ * <p>When an execution times out, its worker is interrupted, so that blocking calls are cut short, and the {@link #setCanceller(Runnable) canceller}
+ * registered by the execution, which should forcibly stop it, like closing its context, is run.
+ * As cancelling may block until the execution stops, cancellers run on a separate executor so that they never delay the timeouts of other executions.
+ * The timeout callback of the execution is only run by the worker once the execution has stopped, so the worker is free by then.
+ * A timeout that fires after the execution returned is ignored.</p>
+ */
+public final class ScriptScheduler {
+    /**
+     * How long an execution may run for, before it is interrupted.
+     */
+    public static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final int maxQueued;
+    private final int maxQueuedPerUser;
+
+    private static final ThreadLocal<Task> CURRENT = new ThreadLocal<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * The guilds with pending executions, in the order they will be served in.
+     */
+    private final LongArrayFIFOQueue guildOrder = new LongArrayFIFOQueue();
+    private final Long2ObjectMap<GuildQueue> guilds = new Long2ObjectOpenHashMap<>();
+    private int queued;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "Script timeouts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ExecutorService CANCELLERS = Executors.newFixedThreadPool(2, r -> {
+        final Thread thread = new Thread(r, "Script cancellation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param workers          the amount of threads executing scripts
+     * @param maxQueued        the maximum amount of queued executions
+     * @param maxQueuedPerUser the maximum amount of queued executions of a single user
+     */
+    public ScriptScheduler(int workers, int maxQueued, int maxQueuedPerUser) {
+        this.maxQueued = Math.max(maxQueued, 1);
+        this.maxQueuedPerUser = Math.max(maxQueuedPerUser, 1);
+
+        for (int i = 0; i < Math.max(workers, 1); i++) {
+            final Thread worker = new Thread(this::work, "Script execution #" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues an execution.
+     *
+     * @param guild     the ID of the guild the execution was requested in
+     * @param user      the ID of the user requesting the execution
+     * @param execution the execution
+     * @param onTimeout a callback run by the worker once the execution stops, if it timed out
+     * @return {@code true} if the execution was queued, or {@code false} if the queue of the scheduler or of the user is full
+     */
+    public boolean submit(long guild, long user, Runnable execution, Runnable onTimeout) {
+        lock.lock();
+        try {
+            if (queued >= maxQueued) return false;
+
+            GuildQueue guildQueue = guilds.get(guild);
+            if (guildQueue == null) {
+                guildQueue = new GuildQueue();
+                guilds.put(guild, guildQueue);
+                guildOrder.enqueue(guild);
+            }
+            Queue<Task> userQueue = guildQueue.users.get(user);
+            if (userQueue == null) {
+                userQueue = new ArrayDeque<>();
+                guildQueue.users.put(user, userQueue);
+                guildQueue.userOrder.enqueue(user);
+            } else if (userQueue.size() >= maxQueuedPerUser) {
+                return false;
+            }
+
+            userQueue.add(new Task(execution, onTimeout));
+            queued++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the canceller of the execution running on the current thread, which the timer runs if the execution times out.
+     * <p>The canceller must be {@linkplain #setCanceller(Runnable) cleared} before the resources it uses are released,
+     * which waits for a running canceller to complete. It must therefore be cleared once the execution stopped using these resources,
+     * since a running canceller may wait for that.</p>
+     *
+     * @param canceller the canceller, or {@code null} to clear it
+     */
+    public static void setCanceller(@Nullable Runnable canceller) {
+        final Task task = CURRENT.get();
+        if (task != null) {
+            task.setCanceller(canceller);
+        }
+    }
+
+    /**
+     * {@return if the execution running on the current thread timed out}
+     */
+    public static boolean timedOut() {
+        final Task task = CURRENT.get();
+        return task != null && task.timedOut();
+    }
+
+    /**
+     * {@return the amount of executions waiting for a worker}
+     */
+    public int queued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next task, moving its guild and user to the back of their queues.
+     */
+    private Task take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (queued == 0) {
+                notEmpty.await();
+            }
+
+            final long guild = guildOrder.dequeueLong();
+            final GuildQueue guildQueue = guilds.get(guild);
+            final long user = guildQueue.userOrder.dequeueLong();
+            final Queue<Task> userQueue = guildQueue.users.get(user);
+            final Task task = userQueue.remove();
+            queued--;
+
+            if (userQueue.isEmpty()) {
+                guildQueue.users.remove(user);
+            } else {
+                guildQueue.userOrder.enqueue(user);
+            }
+            if (guildQueue.userOrder.isEmpty()) {
+                guilds.remove(guild);
+            } else {
+                guildOrder.enqueue(guild);
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            final Task task;
+            try {
+                task = take();
+            } catch (InterruptedException exception) {
+                return;
+            }
+
+            task.start();
+            CURRENT.set(task);
+            final ScheduledFuture<?> timeout = timer.schedule(task::timeOut, TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            try {
+                task.execution.run();
+            } catch (Throwable throwable) {
+                BotMain.LOGGER.error("Uncaught exception executing script: ", throwable);
+            } finally {
+                // Finish first, so that a timeout firing from now on is ignored
+                final boolean timedOut = task.finish();
+                timeout.cancel(false);
+                CURRENT.remove();
+                if (timedOut) {
+                    try {
+                        task.onTimeout.run();
+                    } catch (Throwable throwable) {
+                        BotMain.LOGGER.error("Uncaught exception handling script timeout: ", throwable);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class GuildQueue {
+        private final LongArrayFIFOQueue userOrder = new LongArrayFIFOQueue();
+        private final Long2ObjectMap<Queue<Task>> users = new Long2ObjectOpenHashMap<>();
+    }
+
+    private static final class Task {
+        private final Runnable execution;
+        private final Runnable onTimeout;
+        private Thread thread;
+        @Nullable
+        private Runnable canceller;
+        private boolean cancelling;
+        private boolean finished;
+        private boolean timedOut;
+
+        private Task(Runnable execution, Runnable onTimeout) {
+            this.execution = execution;
+            this.onTimeout = onTimeout;
+        }
+
+        synchronized void start() {
+            thread = Thread.currentThread();
+        }
+
+        /**
+         * Marks the task as finished, clearing the interrupt flag of the worker if the task timed out.
+         * Timeouts are ignored from then on.
+         *
+         * @return if the task timed out before it finished
+         */
+        synchronized boolean finish() {
+            finished = true;
+            thread = null;
+            canceller = null;
+            Thread.interrupted();
+            return timedOut;
+        }
+
+        /**
+         * Sets the canceller of the task, waiting for a running canceller to complete first.
+         * If the task already timed out, for instance while the execution was setting up, the canceller is run right away.
+         */
+        synchronized void setCanceller(@Nullable Runnable canceller) {
+            boolean interrupted = false;
+            while (cancelling) {
+                try {
+                    wait();
+                } catch (InterruptedException exception) {
+                    // The worker is interrupted when the task times out, but the cancellation must still be waited for
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            this.canceller = canceller;
+            if (timedOut && !finished && canceller != null) {
+                cancel(canceller);
+            }
+        }
+
+        synchronized boolean timedOut() {
+            return timedOut;
+        }
+
+        synchronized void timeOut() {
+            if (finished) return;
+            timedOut = true;
+            thread.interrupt();
+
+            if (canceller != null) {
+                cancel(canceller);
+            }
+        }
+
+        /**
+         * Runs the given {@code canceller} on the {@link #CANCELLERS cancellation executor}.
+         */
+        private void cancel(Runnable canceller) {
+            cancelling = true;
+            CANCELLERS.execute(() -> {
+                try {
+                    canceller.run();
+                } catch (Throwable throwable) {
+                    BotMain.LOGGER.error("Could not cancel timed out script execution: ", throwable);
+                } finally {
+                    synchronized (this) {
+                        cancelling = false;
+                        notifyAll();
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package uk.gemwire.camelot.script;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.graalvm.polyglot.Source;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of the {@link Source sources} of tricks, so that executing a trick evaluates the same source every time and
+ * the shared {@link ScriptUtils#ENGINE engine} can reuse the code it parsed, profiled and compiled for it.
+ * <p>Sources are cached by trick ID and script content, with a single source per version of a trick, and {@linkplain #invalidate(int) invalidated}
+ * when a trick is updated or deleted.</p>
+ * <p>Scripts are always evaluated as modules, so that the declarations of a script stay in the scope of its module.
+ * As a context caches the modules it evaluated by name, a context that evaluated a module is never reused.</p>
+ */
+public final class ScriptSources {
+    /**
+     * The maximum amount of sources to cache.
+     */
+    public static final int MAX_SOURCES = 1000;
+
+    private final Cache<Key, Entry> sources = Caffeine.newBuilder()
+            .maximumSize(MAX_SOURCES)
+            .build();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Gets the source of a trick.
+     *
+     * @param trick  the ID of the trick
+     * @param script the script of the trick
+     * @return the source
+     */
+    public Source get(int trick, String script) {
+        final Key key = new Key(trick, script.hashCode());
+        final Entry cached = sources.getIfPresent(key);
+        if (cached != null && cached.script().equals(script)) {
+            hits.increment();
+            return cached.source();
+        }
+        misses.increment();
+        final Source source = create("trick-" + trick + ".js", script);
+        sources.put(key, new Entry(script, source));
+        return source;
+    }
+
+    /**
+     * Invalidates the cached sources of the trick with the given {@code id}.
+     */
+    public void invalidate(int trick) {
+        sources.asMap().keySet().removeIf(key -> key.trick() == trick);
+    }
+
+    /**
+     * {@return how many times a cached source was reused}
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * {@return how many times a source had to be created}
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * {@return the amount of cached sources}
+     */
+    public long size() {
+        return sources.estimatedSize();
+    }
+
+    /**
+     * Creates the module source of a script.
+     *
+     * @param name   the name of the module
+     * @param script the script
+     * @return the source
+     */
+    public static Source create(String name, String script) {
+        return Source.newBuilder("js", script + ScriptUtils.EXPORT_MEMBERS, name)
+                .mimeType("application/javascript+module")
+                .buildLiteral();
+    }
+
+    private record Key(int trick, int hash) {
+    }
+
+    private record Entry(String script, Source source) {
+    }
+}
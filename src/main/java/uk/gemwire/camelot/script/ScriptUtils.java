@@ -7,13 +7,18 @@ import org.graalvm.polyglot.Engine;
 import org.graalvm.polyglot.EnvironmentAccess;
 import org.graalvm.polyglot.HostAccess;
 import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.ResourceLimits;
 import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.Nullable;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.ParserProperties;
 import org.kohsuke.args4j.spi.OptionHandler;
+import uk.gemwire.camelot.configuration.Config;
+import uk.gemwire.camelot.db.schemas.Trick;
 import uk.gemwire.camelot.script.fs.ScriptFileSystemProvider;
+import uk.gemwire.camelot.script.option.ScriptCmdLineParser;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -34,11 +39,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 /**
@@ -130,32 +132,105 @@ public class ScriptUtils {
         }
     };
 
-    public static final ScheduledExecutorService SERVICE = Executors.newScheduledThreadPool(3, r -> {
-        final Thread thread = new Thread(r, "Script execution");
-        thread.setDaemon(true);
-        return thread;
-    });
+    /**
+     * The properties of the parsers of script options.
+     */
+    public static final ParserProperties PARSER_PROPERTIES = ParserProperties.defaults().withAtSyntax(false).withUsageWidth(40);
 
-    static {
-        ((ScheduledThreadPoolExecutor) SERVICE).setMaximumPoolSize(10);
-    }
+    /**
+     * The scheduler scripts are executed on.
+     */
+    public static final ScriptScheduler SCHEDULER = new ScriptScheduler(Config.SCRIPT_WORKERS, Config.SCRIPT_QUEUE_SIZE, Config.SCRIPT_USER_QUEUE_SIZE);
 
     /**
-     * Submits the given {@code script} for execution on another thread, timing out after 5 seconds.
+     * The cache of the sources of tricks.
+     */
+    public static final ScriptSources SOURCES = new ScriptSources();
+
+    /**
+     * The metrics of the script executions.
+     */
+    public static final ScriptMetrics METRICS = new ScriptMetrics();
+
+    /**
+     * The cache of the option schemas of tricks.
+     */
+    public static final ScriptOptionSchemas SCHEMAS = new ScriptOptionSchemas();
+
+    /**
+     * Submits the given {@code script} for execution on another thread, timing out after {@link ScriptScheduler#TIMEOUT 5 seconds}.
      *
      * @param context the context to evaluate the script with
      * @param script  the script to evaluate
      * @param args    the arguments to evaluate the script with
      */
     public static void submitExecution(ScriptContext context, String script, String args) {
-        final Future<Void> execution = ScriptUtils.SERVICE.submit(() -> ScriptUtils.execute(context, script, args), null);
+        submitExecution(context, ScriptMetrics.NO_TRICK, null, scriptSource(script), 0, args);
+    }
 
-        ScriptUtils.SERVICE.schedule(() -> {
-            if (!execution.isDone()) {
-                execution.cancel(true);
-                context.reply().accept(MessageCreateData.fromContent("Script execution timed out!"));
-            }
-        }, 5, TimeUnit.SECONDS);
+    /**
+     * Submits the given {@code trick} for execution on another thread, timing out after {@link ScriptScheduler#TIMEOUT 5 seconds}.
+     * <p>The source and the options of the trick are {@link ScriptSources cached}, and the execution is limited to the {@link Trick#statementLimit() statement limit} of the trick.</p>
+     *
+     * @param context the context to evaluate the trick with
+     * @param trick   the trick to evaluate
+     * @param args    the arguments to evaluate the trick with
+     */
+    public static void submitExecution(ScriptContext context, Trick trick, String args) {
+        submitExecution(context, trick.id(), trick.script(), () -> SOURCES.get(trick.id(), trick.script()), trick.statementLimit(), args);
+    }
+
+    /**
+     * Submits a script for execution.
+     * <p>The context should reply through a {@link BufferedReply}, so that neither the script nor any other thread waits for replies to be sent.
+     * The buffered reply is flushed once the execution finishes.</p>
+     */
+    private static void submitExecution(ScriptContext context, int trick, @Nullable String script, Supplier<Source> source, long statementLimit, String args) {
+        final Consumer<MessageCreateData> reply = context.reply();
+        final boolean queued = SCHEDULER.submit(
+                context.guild() == null ? 0 : context.guild().getIdLong(), context.member().getIdLong(),
+                () -> {
+                    try {
+                        ScriptUtils.execute(context, trick, script, source, statementLimit, args);
+                    } finally {
+                        flush(reply);
+                    }
+                },
+                () -> reply.accept(MessageCreateData.fromContent("Script execution timed out!"))
+        );
+        if (!queued) {
+            reply.accept(MessageCreateData.fromContent("Too many scripts are being executed right now, please try again later!"));
+            flush(reply);
+        }
+    }
+
+    private static void flush(Consumer<MessageCreateData> reply) {
+        if (reply instanceof BufferedReply buffered) {
+            buffered.flush();
+        }
+    }
+
+    /**
+     * {@return a function creating the uncached source of the given {@code script}, for scripts that are not tricks}
+     */
+    private static Supplier<Source> scriptSource(String script) {
+        return () -> ScriptSources.create("script.js", script);
+    }
+
+    /**
+     * Checks the syntax of the given {@code script}, without executing it.
+     *
+     * @param script the script to check
+     * @return the syntax error of the script, or {@code null} if it is valid
+     */
+    @Nullable
+    public static String validate(String script) {
+        try (final Context context = createContext(0)) {
+            context.parse(ScriptSources.create("validation.js", script));
+            return null;
+        } catch (PolyglotException exception) {
+            return exception.isSyntaxError() ? exception.getMessage() : null;
+        }
     }
 
     /**
@@ -165,33 +240,47 @@ public class ScriptUtils {
      * @param script    the script to evaluate
      * @param arguments the arguments to evaluate the script with
      */
+    public static void execute(ScriptContext context, String script, String arguments) {
+        execute(context, ScriptMetrics.NO_TRICK, null, scriptSource(script), 0, arguments);
+    }
+
+    /**
+     * Evaluate the script whose source is given by the {@code source} supplier.
+     *
+     * <p>If the execution runs on the {@link #SCHEDULER scheduler}, its context is cancelled when it times out.
+     * The execution is recorded in the {@link #METRICS metrics} of the {@code trick}, and the options it declares are
+     * reused from and captured into its {@link #SCHEMAS schema}.</p>
+     *
+     * @param scriptContext  the context to evaluate the script with
+     * @param trick          the ID of the trick being evaluated, or {@link ScriptMetrics#NO_TRICK} if the script is not a trick
+     * @param script         the script of the trick, identifying the version of its option schema, or {@code null} if the script is not a trick
+     * @param source         a supplier of the source of the script to evaluate
+     * @param statementLimit the maximum amount of statements the script may run, or {@code 0} to use the {@link Config#SCRIPT_STATEMENT_LIMIT default limit}
+     * @param arguments      the arguments to evaluate the script with
+     */
     public static void execute(
-            ScriptContext context,
-            String script,
+            ScriptContext scriptContext,
+            int trick,
+            @Nullable String script,
+            Supplier<Source> source,
+            long statementLimit,
             String arguments
     ) {
-        try (final Context graal = Context.newBuilder("js")
-                .allowNativeAccess(false)
-                .allowIO(true) // Allow IO but install a custom file system with the other tricks
-                .fileSystem(GRAAL_FS)
-                .allowCreateProcess(false)
-                .allowEnvironmentAccess(EnvironmentAccess.NONE)
-                .allowHostClassLoading(false)
-                .allowValueSharing(true)
-                .allowHostAccess(HOST_ACCESS)
-                .engine(ENGINE)
-                .build()) {
+        final ScriptMetrics.Recorder metrics = METRICS.start(trick);
+        final ScriptContext context = new ScriptContext(scriptContext.jda(), scriptContext.guild(), scriptContext.member(), scriptContext.channel(),
+                metrics.timeReplies(scriptContext.reply()));
+        ScriptMetrics.Outcome outcome = ScriptMetrics.Outcome.EXCEPTION;
+        final ScriptOptionSchemas.Capture schema = SCHEMAS.capture(trick, script);
+
+        final Context graal = createContext(statementLimit);
+        ScriptScheduler.setCanceller(() -> graal.close(true));
+        try {
             final var bindings = graal.getBindings("js");
-            bindings.removeMember("load");
-            bindings.removeMember("loadWithNewGlobal");
-            bindings.removeMember("eval");
-            bindings.removeMember("exit");
-            bindings.removeMember("quit");
 
-            final CmdLineParser parser = new CmdLineParser(ParserProperties.defaults().withAtSyntax(false).withUsageWidth(40));
+            final CmdLineParser parser = new ScriptCmdLineParser(PARSER_PROPERTIES);
             final ScriptOptions scriptOptions = new ScriptOptions(
                     ScriptUtils.toArgs(arguments), parser,
-                    new ArrayList<>(), new HashMap<>(), context
+                    new ArrayList<>(), new HashMap<>(), context, schema
             );
             bindings.putMember("options", scriptOptions);
             bindings.putMember("simpleExports", ScriptObject.of("Exports"));
@@ -200,17 +289,19 @@ public class ScriptUtils {
             context.compile().transferTo(bindings);
 
             try {
-                final Source source = Source.newBuilder("js", script + EXPORT_MEMBERS, "script.js")
-                        .mimeType("application/javascript+module")
-                        .build();
-                graal.eval(source);
+                metrics.next(ScriptMetrics.Phase.PARSE);
+                final Value parsed = graal.parse(source.get());
 
+                metrics.next(ScriptMetrics.Phase.RUN);
+                parsed.execute();
                 final Value execute = exports.getMember("execute");
                 if (execute != null) {
                     execute.execute();
                 }
+                outcome = ScriptMetrics.Outcome.SUCCESS;
             } catch (PolyglotException ex) {
                 if (Objects.equals(ex.getMessage(), RequestedHelpException.MESSAGE)) {
+                    outcome = ScriptMetrics.Outcome.HELP;
                     final StringWriter writer = new StringWriter();
 
                     final Value help = exports.getMember("description");
@@ -218,17 +309,11 @@ public class ScriptUtils {
                         writer.append("**Description**: ").append(toString(help)).append('\n');
                     }
 
-                    if (Stream.concat(parser.getArguments().stream(), parser.getOptions().stream()).anyMatch(s -> !s.option.hidden())) {
-                        writer.append("Usage: ");
-                        printSingleLineUsage(parser, writer);
-                        writer.append("\n```");
-                        parser.printUsage(writer, null, o -> !o.option.hidden());
-                        writer.append("```");
-                    }
+                    writer.append(schema.finish().usage(() -> usage(parser)));
 
                     final String toString = writer.toString();
                     context.reply().accept(MessageCreateData.fromContent(toString.isBlank() ? "*No help provided*" : toString));
-                } else if (!ex.getMessage().equals("Thread was interrupted.")) { // If it is interrupted then the user would be informed about the time out
+                } else if (!ScriptScheduler.timedOut() && !ex.getMessage().equals("Thread was interrupted.")) { // If it timed out then the user will be informed about the time out
                     final StringBuilder message = new StringBuilder();
                     message.append("Script failed execution due to an exception: **").append(ex.getMessage()).append("**");
                     final String trace = String.join("\n", Stream.of(ex.getStackTrace())
@@ -240,9 +325,69 @@ public class ScriptUtils {
                     context.reply().accept(MessageCreateData.fromContent(message.toString()));
                 }
             } catch (Exception ex) {
-                context.reply().accept(MessageCreateData.fromContent("Could not evaluate script due to an exception: " + ex.getMessage()));
+                if (!ScriptScheduler.timedOut()) {
+                    context.reply().accept(MessageCreateData.fromContent("Could not evaluate script due to an exception: " + ex.getMessage()));
+                }
             }
+        } finally {
+            // Clearing the canceller waits for a running cancellation, so that the context is not closed twice at once
+            ScriptScheduler.setCanceller(null);
+            metrics.finish(ScriptScheduler.timedOut() ? ScriptMetrics.Outcome.TIMEOUT : outcome);
+            SCHEMAS.store(trick, schema);
+            graal.close(true);
+        }
+    }
+
+    /**
+     * Creates a context to evaluate scripts in, on the shared {@link #ENGINE engine}.
+     * <p>A new context is created for every execution, so that no state is shared between executions, while the code
+     * the engine compiled is still shared between the contexts.</p>
+     *
+     * @param statementLimit the maximum amount of statements the context may run, or {@code 0} to use the {@link Config#SCRIPT_STATEMENT_LIMIT default limit}
+     * @return the context
+     */
+    static Context createContext(long statementLimit) {
+        final long limit = statementLimit > 0 ? statementLimit : Config.SCRIPT_STATEMENT_LIMIT;
+        final Context.Builder builder = Context.newBuilder("js")
+                .allowNativeAccess(false)
+                .allowIO(true) // Allow IO but install a custom file system with the other tricks
+                .fileSystem(GRAAL_FS)
+                .allowCreateProcess(false)
+                .allowEnvironmentAccess(EnvironmentAccess.NONE)
+                .allowHostClassLoading(false)
+                .allowValueSharing(true)
+                .allowHostAccess(HOST_ACCESS)
+                .engine(ENGINE);
+        if (limit > 0) {
+            builder.resourceLimits(ResourceLimits.newBuilder()
+                    .statementLimit(limit, source -> !source.isInternal())
+                    .build());
+        }
+        final Context context = builder.build();
+
+        final Value bindings = context.getBindings("js");
+        bindings.removeMember("load");
+        bindings.removeMember("loadWithNewGlobal");
+        bindings.removeMember("eval");
+        bindings.removeMember("exit");
+        bindings.removeMember("quit");
+        return context;
+    }
+
+    /**
+     * {@return the usage of the options of the given {@code parser}, or an empty string if all of them are hidden}
+     */
+    private static String usage(CmdLineParser parser) {
+        if (Stream.concat(parser.getArguments().stream(), parser.getOptions().stream()).allMatch(s -> s.option.hidden())) {
+            return "";
         }
+        final StringWriter writer = new StringWriter();
+        writer.append("Usage: ");
+        printSingleLineUsage(parser, writer);
+        writer.append("\n```");
+        parser.printUsage(writer, null, o -> !o.option.hidden());
+        writer.append("```");
+        return writer.toString();
     }
 
     private static void printSingleLineUsage(CmdLineParser parser, Writer w) {
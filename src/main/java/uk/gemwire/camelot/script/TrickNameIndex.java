@@ -0,0 +1,126 @@
+package uk.gemwire.camelot.script;
+
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * An n-gram index of trick aliases, used to find the aliases containing a substring without scanning all of them.
+ * <p>Every substring of up to {@value #GRAM_LENGTH} characters of an alias is indexed. Queries up to that length are answered
+ * by a single lookup, while longer queries only check the aliases containing the least common n-gram of the query.</p>
+ * <p>Matches are ranked by how early they contain the query, so that aliases starting with it come first, and then by length,
+ * meaning that an exact match is always the first. Ties are broken alphabetically.</p>
+ */
+public final class TrickNameIndex {
+    /**
+     * The length of the longest indexed substrings.
+     */
+    public static final int GRAM_LENGTH = 3;
+
+    private final Set<String> names = new ObjectOpenHashSet<>();
+    private final Map<String, Set<String>> grams = new HashMap<>();
+
+    /**
+     * Replaces all indexed aliases with the given {@code aliases}.
+     */
+    public synchronized void reset(Collection<String> aliases) {
+        names.clear();
+        grams.clear();
+        aliases.forEach(this::add);
+    }
+
+    /**
+     * Adds an alias to the index.
+     */
+    public synchronized void add(String alias) {
+        if (!names.add(alias)) return;
+        forEachGram(alias, gram -> grams.computeIfAbsent(gram, k -> new ObjectOpenHashSet<>()).add(alias));
+    }
+
+    /**
+     * Removes an alias from the index.
+     */
+    public synchronized void remove(String alias) {
+        if (!names.remove(alias)) return;
+        forEachGram(alias, gram -> {
+            final Set<String> withGram = grams.get(gram);
+            if (withGram != null && withGram.remove(alias) && withGram.isEmpty()) {
+                grams.remove(gram);
+            }
+        });
+    }
+
+    /**
+     * Finds the best aliases containing the given {@code query}, ignoring case.
+     *
+     * @param query the substring to search for
+     * @param limit the maximum amount of aliases to return
+     * @return the matching aliases, best match first
+     */
+    public synchronized List<String> search(String query, int limit) {
+        final String lowerQuery = query.toLowerCase(Locale.ROOT);
+        final Collection<String> candidates = candidates(lowerQuery);
+        if (candidates.isEmpty() || limit <= 0) return List.of();
+
+        final Comparator<String> ranking = ranking(lowerQuery);
+        // Keep the best matches in a heap whose head is the worst of them, so each candidate is compared with it once
+        final PriorityQueue<String> best = new PriorityQueue<>(Math.min(limit, candidates.size()) + 1, ranking.reversed());
+        for (final String candidate : candidates) {
+            if (lowerQuery.length() > GRAM_LENGTH && !candidate.contains(lowerQuery)) continue;
+            best.add(candidate);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        final List<String> result = new ArrayList<>(best);
+        result.sort(ranking);
+        return result;
+    }
+
+    /**
+     * {@return the aliases that may contain the {@code query}}
+     * If the query is at most {@value #GRAM_LENGTH} characters long, all returned aliases contain it.
+     */
+    private Collection<String> candidates(String query) {
+        if (query.isEmpty()) return names;
+        if (query.length() <= GRAM_LENGTH) return grams.getOrDefault(query, Set.of());
+
+        Set<String> smallest = null;
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+            final Set<String> withGram = grams.get(query.substring(i, i + GRAM_LENGTH));
+            if (withGram == null) return Set.of();
+            if (smallest == null || withGram.size() < smallest.size()) {
+                smallest = withGram;
+            }
+        }
+        return smallest;
+    }
+
+    private static Comparator<String> ranking(String query) {
+        return Comparator.<String>comparingInt(name -> name.indexOf(query))
+                .thenComparingInt(String::length)
+                .thenComparing(Comparator.naturalOrder());
+    }
+
+    private static void forEachGram(String alias, Consumer<String> consumer) {
+        final Set<String> seen = new ObjectOpenHashSet<>();
+        for (int length = 1; length <= GRAM_LENGTH; length++) {
+            for (int i = 0; i + length <= alias.length(); i++) {
+                final String gram = alias.substring(i, i + length);
+                if (seen.add(gram)) {
+                    consumer.accept(gram);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package uk.gemwire.camelot.script;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMaps;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMaps;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+import uk.gemwire.camelot.Database;
+import uk.gemwire.camelot.db.schemas.Trick;
+import uk.gemwire.camelot.db.transactionals.TricksDAO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * An in-memory registry of all {@link Trick tricks} and their aliases, so that resolving a trick never queries the database.
+ * <p>The registry is loaded from the database at startup, and must be kept up to date by the code modifying the tricks in the database.
+ * Looking up a name that is not a trick is a single hash lookup, so the prefix listener can cheaply ignore the messages that are not tricks.</p>
+ * <p>The aliases are also kept in a {@link TrickNameIndex} to {@linkplain #search(String, int) search} them for autocompletion.</p>
+ */
+public final class TrickRegistry {
+    /**
+     * The maximum amount of digits of a name that may be a trick ID, so that parsing it cannot overflow.
+     */
+    private static final int MAX_ID_DIGITS = 9;
+
+    private final Object2IntMap<String> names;
+    private final Int2ObjectMap<Trick> tricks;
+    private final TrickNameIndex index = new TrickNameIndex();
+
+    public TrickRegistry() {
+        final Object2IntOpenHashMap<String> names = new Object2IntOpenHashMap<>();
+        names.defaultReturnValue(-1);
+        this.names = Object2IntMaps.synchronize(names);
+        this.tricks = Int2ObjectMaps.synchronize(new Int2ObjectOpenHashMap<>());
+    }
+
+    /**
+     * Loads all tricks and their aliases from the database, replacing the known ones.
+     */
+    public void load() {
+        final List<Trick> allTricks = Database.main().withExtension(TricksDAO.class, TricksDAO::getAllTricks);
+        final Object2IntMap<String> allNames = Database.main().withExtension(TricksDAO.class, TricksDAO::getAllTrickNames);
+        synchronized (names) {
+            tricks.clear();
+            allTricks.forEach(trick -> tricks.put(trick.id(), trick));
+            names.clear();
+            names.putAll(allNames);
+            index.reset(allNames.keySet());
+        }
+    }
+
+    /**
+     * Gets a trick by name.
+     * <p>Like {@link TricksDAO#getTrick(String)}, if the {@code name} is a number, the trick with that ID is looked up first.
+     * Otherwise, or if there is no such trick, the trick with the {@code name} as an alias is returned.</p>
+     *
+     * @return the trick, or {@code null} if no trick has the given ID or alias
+     */
+    @Nullable
+    public Trick get(String name) {
+        if (isId(name)) {
+            final Trick byId = tricks.get(Integer.parseInt(name));
+            if (byId != null) return byId;
+        }
+        return getByAlias(name);
+    }
+
+    /**
+     * {@return the trick with the given {@code id}, or {@code null} if one does not exist}
+     */
+    @Nullable
+    public Trick get(int id) {
+        return tricks.get(id);
+    }
+
+    /**
+     * {@return the trick with the given {@code alias}, or {@code null} if one does not exist}
+     */
+    @Nullable
+    public Trick getByAlias(String alias) {
+        final int id = names.getInt(alias);
+        return id < 0 ? null : tricks.get(id);
+    }
+
+    /**
+     * {@return the aliases of the trick with the given {@code id}}
+     */
+    public List<String> getAliases(int id) {
+        final List<String> aliases = new ArrayList<>();
+        synchronized (names) {
+            names.object2IntEntrySet().forEach(entry -> {
+                if (entry.getIntValue() == id) {
+                    aliases.add(entry.getKey());
+                }
+            });
+        }
+        return aliases;
+    }
+
+    /**
+     * {@return if a trick with the given {@code alias} exists}
+     */
+    public boolean hasAlias(String alias) {
+        return names.containsKey(alias);
+    }
+
+    /**
+     * Adds a newly-created trick.
+     *
+     * @param trick   the trick to add
+     * @param aliases the aliases of the trick
+     */
+    public void add(Trick trick, Collection<String> aliases) {
+        synchronized (names) {
+            tricks.put(trick.id(), trick);
+            aliases.forEach(alias -> {
+                names.put(alias, trick.id());
+                index.add(alias);
+            });
+        }
+    }
+
+    /**
+     * Updates the script of the trick with the given {@code id}.
+     *
+     * @param id     the ID of the trick to update
+     * @param script the new script of the trick
+     */
+    public void updateScript(int id, String script) {
+        update(id, trick -> new Trick(id, script, trick.owner(), trick.statementLimit()));
+    }
+
+    /**
+     * Updates the statement limit of the trick with the given {@code id}.
+     *
+     * @param id    the ID of the trick to update
+     * @param limit the new statement limit of the trick
+     */
+    public void updateStatementLimit(int id, long limit) {
+        update(id, trick -> new Trick(id, trick.script(), trick.owner(), limit));
+    }
+
+    private void update(int id, UnaryOperator<Trick> updater) {
+        synchronized (names) {
+            final Trick trick = tricks.get(id);
+            if (trick != null) {
+                tricks.put(id, updater.apply(trick));
+            }
+        }
+    }
+
+    /**
+     * Removes the trick with the given {@code id}, along with all of its aliases.
+     *
+     * @param id the ID of the trick to remove
+     */
+    public void delete(int id) {
+        synchronized (names) {
+            tricks.remove(id);
+            names.object2IntEntrySet().removeIf(entry -> {
+                if (entry.getIntValue() != id) return false;
+                index.remove(entry.getKey());
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Adds an alias to the trick with the given {@code id}.
+     *
+     * @param id    the ID of the trick
+     * @param alias the alias to add
+     */
+    public void addAlias(int id, String alias) {
+        synchronized (names) {
+            names.put(alias, id);
+            index.add(alias);
+        }
+    }
+
+    /**
+     * Removes the given {@code alias}.
+     *
+     * @param alias the alias to remove
+     */
+    public void removeAlias(String alias) {
+        synchronized (names) {
+            names.removeInt(alias);
+            index.remove(alias);
+        }
+    }
+
+    /**
+     * Searches the aliases containing the given {@code query}.
+     *
+     * @param query the substring to search for
+     * @param limit the maximum amount of aliases to return
+     * @return the matching aliases, best match first
+     * @see TrickNameIndex#search(String, int)
+     */
+    public List<String> search(String query, int limit) {
+        return index.search(query, limit);
+    }
+
+    /**
+     * {@return the amount of known tricks}
+     */
+    public int size() {
+        return tricks.size();
+    }
+
+    private static boolean isId(String name) {
+        if (name.isEmpty() || name.length() > MAX_ID_DIGITS) return false;
+        for (int i = 0; i < name.length(); i++) {
+            final char ch = name.charAt(i);
+            if (ch < '0' || ch > '9') return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,56 @@
+package uk.gemwire.camelot.script;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.PolyglotException;
+import uk.gemwire.camelot.BotMain;
+import uk.gemwire.camelot.Database;
+import uk.gemwire.camelot.db.schemas.Trick;
+import uk.gemwire.camelot.db.transactionals.TricksDAO;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms up the tricks after a restart, by parsing the {@link ScriptSources cached source} of every trick on the shared {@link ScriptUtils#ENGINE engine},
+ * so that their executions do not have to parse them while the user waits.
+ * <p>As every execution of a trick, in any context, evaluates the same cached source, the parsed code is reused by all of them.</p>
+ * <p>The tricks are only parsed and never executed, as executing them requires a context to execute them in.</p>
+ */
+public final class TrickWarmup {
+    private TrickWarmup() {
+    }
+
+    /**
+     * Starts warming up the tricks on a low-priority background thread.
+     */
+    public static void start() {
+        final Thread thread = new Thread(TrickWarmup::run, "Trick warm-up");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private static void run() {
+        final long start = System.nanoTime();
+        final List<Trick> tricks = Database.main().withExtension(TricksDAO.class, TricksDAO::getAllTricks);
+        int failed = 0;
+
+        try (final Context context = ScriptUtils.createContext(0)) {
+            for (final Trick trick : tricks) {
+                try {
+                    // Every execution of the trick evaluates this same source
+                    context.parse(ScriptUtils.SOURCES.get(trick.id(), trick.script()));
+                } catch (PolyglotException exception) {
+                    failed++;
+                    BotMain.LOGGER.warn("Trick {} failed to parse: {}", trick.id(), exception.getMessage());
+                    if (!exception.isSyntaxError()) break;
+                }
+            }
+        } catch (Exception exception) {
+            BotMain.LOGGER.error("Could not warm up tricks: ", exception);
+        }
+
+        BotMain.LOGGER.info("Warmed up {} tricks in {}ms, {} of which failed to parse.", tricks.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failed);
+    }
+}
@@ -1,9 +1,10 @@
 package uk.gemwire.camelot.script.fs;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.jetbrains.annotations.NotNull;
-import uk.gemwire.camelot.Database;
 import uk.gemwire.camelot.db.schemas.Trick;
-import uk.gemwire.camelot.db.transactionals.TricksDAO;
+import uk.gemwire.camelot.listener.TrickListener;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -34,7 +35,21 @@ import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * The provider of the file system scripts import other tricks from, in which each trick is a {@code <alias>.js} file.
+ * <p>Tricks are resolved through the {@link TrickListener#TRICKS trick registry}, so imports never query the database.
+ * The encoded scripts are cached per version of the trick, meaning that importing the same trick again does not copy its script,
+ * while updating it, which replaces the trick in the registry, makes the next import encode the new script.</p>
+ */
 public class ScriptFileSystemProvider extends FileSystemProvider {
+    /**
+     * The UTF-8 encoded scripts of the imported tricks. The keys are weak, and compared by identity, so the entry of a trick
+     * is dropped once it is replaced in the registry.
+     */
+    private static final Cache<Trick, byte[]> MODULES = Caffeine.newBuilder()
+            .weakKeys()
+            .maximumSize(1000)
+            .build();
 
     public static ScriptFileSystemProvider provider() {
         return (ScriptFileSystemProvider) installedProviders().stream()
@@ -71,18 +86,12 @@ public class ScriptFileSystemProvider extends FileSystemProvider {
 
     @Override
     public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
-        final String trickName = getTrickName(path);
-        final String script = Database.main().withExtension(TricksDAO.class, db -> {
-            final Integer trickId = db.getTrickByName(trickName);
-            if (trickId == null) return null;
-            final Trick trick = db.getTrick(trickId);
-            if (trick == null) return null;
-            return trick.script();
-        });
-        if (script == null) {
+        final Trick trick = TrickListener.TRICKS.getByAlias(getTrickName(path));
+        if (trick == null) {
             throw new FileNotFoundException(path.toString());
         }
-        return new ByteArrayChannel(script.getBytes(StandardCharsets.UTF_8), true);
+        // The channel is read-only, so the cached bytes can be shared
+        return new ByteArrayChannel(MODULES.get(trick, t -> t.script().getBytes(StandardCharsets.UTF_8)), true);
     }
 
     @Override
@@ -142,9 +151,7 @@ public class ScriptFileSystemProvider extends FileSystemProvider {
                 throw new UnsupportedOperationException();
             }
         }
-        final String trickName = getTrickName(path);
-        if (Database.main().withExtension(TricksDAO.class, db -> db
-                .getTrickByName(trickName) == null)) {
+        if (!TrickListener.TRICKS.hasAlias(getTrickName(path))) {
             throw new FileNotFoundException(path.toString());
         }
     }
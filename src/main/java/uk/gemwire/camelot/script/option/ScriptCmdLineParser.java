@@ -0,0 +1,51 @@
+package uk.gemwire.camelot.script.option;
+
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.OptionDef;
+import org.kohsuke.args4j.ParserProperties;
+import org.kohsuke.args4j.spi.OptionHandler;
+import org.kohsuke.args4j.spi.Setter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * A {@link CmdLineParser} for script options, which creates the option handlers through cached constructors.
+ * <p>The default parser looks the constructor of the handler up reflectively for each added option, which is
+ * a noticeable part of the setup of a trick declaring many options.</p>
+ */
+public class ScriptCmdLineParser extends CmdLineParser {
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(void.class, CmdLineParser.class, OptionDef.class, Setter.class);
+
+    private static final ClassValue<MethodHandle> CONSTRUCTORS = new ClassValue<>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                return MethodHandles.publicLookup().findConstructor(type, CONSTRUCTOR_TYPE);
+            } catch (ReflectiveOperationException exception) {
+                throw new IllegalArgumentException("Option handler " + type + " does not have a (CmdLineParser, OptionDef, Setter) constructor", exception);
+            }
+        }
+    };
+
+    public ScriptCmdLineParser(ParserProperties properties) {
+        super(properties);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    protected OptionHandler createOptionHandler(OptionDef o, Setter setter) {
+        // Handlers inferred from the type of the setter are left to the registry
+        if (o.handler() == OptionHandler.class) {
+            return super.createOptionHandler(o, setter);
+        }
+        try {
+            return (OptionHandler) CONSTRUCTORS.get(o.handler()).invoke(this, o, setter);
+        } catch (RuntimeException | Error exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Could not create option handler " + o.handler(), throwable);
+        }
+    }
+}
@@ -0,0 +1,2 @@
+-- the maximum amount of statements an execution of the trick may run. 0 to use the default limit --
+alter table tricks add column statement_limit integer not null default 0;
@@ -0,0 +1,2 @@
+-- pings that were too expensive to match, and are not checked anymore. see uk.gemwire.camelot.pings.PingCosts --
+alter table pings add column quarantined boolean not null default false;
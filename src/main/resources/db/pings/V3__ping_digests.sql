@@ -0,0 +1,24 @@
+-- users that receive their pings as periodic digests instead of one notification per message --
+create table ping_digest_users
+(
+    user big int not null primary key
+) without rowid;
+
+-- the pings buffered for the next digest of a user, and kept for a while once sent so that digests can be paged through. see uk.gemwire.camelot.pings.PingDigests --
+create table ping_digest_entries
+(
+    -- alias for rowid. autoincrement so that IDs, and therefore digest IDs, are never reused once old entries are deleted --
+    id        integer primary key autoincrement,
+    user      big int not null,
+    guild     big int not null,
+    author    text    not null,
+    url       text    not null,
+    content   text    not null,
+    pings     text    not null,
+    timestamp big int not null,
+    -- the digest the entry was sent in, which is the ID of the last entry of that digest, or null while the entry is buffered --
+    digest    integer
+);
+
+create index ping_digest_entries_user on ping_digest_entries (user);
+create index ping_digest_entries_digest on ping_digest_entries (digest);